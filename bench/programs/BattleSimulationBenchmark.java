@@ -0,0 +1,32 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Полная битва без вывода на модели боя (у бенчмарка нет программ бойцов от игры). В замер входит и копирование армий:
+// битва меняет бойцов, а отдельная подготовка на каждый вызов исказила бы результат сильнее
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BattleSimulationBenchmark {
+
+    @Param({"10", "30", "63"})
+    public int units;
+
+    private Army playerArmy;
+    private Army computerArmy;
+    private long seed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        playerArmy = BenchmarkFixtures.army(units, BattlefieldGeometry.DEFAULT.getWidth() - 3, 1);
+        computerArmy = BenchmarkFixtures.army(units, 0, 2);
+    }
+
+    @Benchmark
+    public BattleOutcome simulate() throws InterruptedException {
+        return BattleMonteCarloRunner.runTrial(playerArmy, computerArmy, 42, seed++);
+    }
+}
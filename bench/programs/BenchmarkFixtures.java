@@ -0,0 +1,91 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// Общие заготовки для бенчмарков: каталоги бойцов, армии и расстановки на поле. Всё строится от зерна, чтобы прогоны были сравнимы
+final class BenchmarkFixtures {
+    private static final String[] TYPES = {"Knight", "Archer", "Swordsman", "Pikeman"};
+    private static final String[] ATTACK_TYPES = {"melee", "ranged"};
+
+    private BenchmarkFixtures() {
+    }
+
+    // Каталог из size типов бойцов со случайными характеристиками
+    static List<Unit> catalog(int size, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Unit> units = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String type = TYPES[i % TYPES.length] + (i / TYPES.length);
+            Map<String, Double> attackBonuses = new HashMap<>();
+            attackBonuses.put(TYPES[random.nextInt(TYPES.length)] + "0", 1.5);
+            Map<String, Double> defenceBonuses = new HashMap<>();
+            defenceBonuses.put(ATTACK_TYPES[random.nextInt(ATTACK_TYPES.length)], 1.2);
+            units.add(new Unit(type, type, 20 + random.nextInt(80), 5 + random.nextInt(40), 10 + random.nextInt(190),
+                    ATTACK_TYPES[random.nextInt(ATTACK_TYPES.length)], attackBonuses, defenceBonuses, 0, 0));
+        }
+        return units;
+    }
+
+    // Армия из size бойцов (не больше 63) в трёх колонках, начиная с колонки firstColumn
+    static Army army(int size, int firstColumn, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Unit> catalog = catalog(8, seed);
+        int[] cells = new int[3 * 21];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = i;
+        }
+        List<Unit> units = new ArrayList<>(size);
+        for (int i = 0; i < Math.min(size, cells.length); i++) {
+            int j = i + random.nextInt(cells.length - i);
+            int cell = cells[j];
+            cells[j] = cells[i];
+            cells[i] = cell;
+            Unit prototype = catalog.get(random.nextInt(catalog.size()));
+            units.add(new Unit(prototype.getName() + " " + i, prototype.getUnitType(), prototype.getHealth(),
+                    prototype.getBaseAttack(), prototype.getCost(), prototype.getAttackType(),
+                    prototype.getAttackBonuses(), prototype.getDefenceBonuses(), firstColumn + cell / 21, cell % 21));
+        }
+        Army army = new Army();
+        army.setUnits(units);
+        return army;
+    }
+
+    // Бойцы, случайно расставленные по всему полю по умолчанию
+    static List<Unit> scatter(int size, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int width = BattlefieldGeometry.DEFAULT.getWidth();
+        int height = BattlefieldGeometry.DEFAULT.getHeight();
+        int[] cells = new int[width * height];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = i;
+        }
+        List<Unit> units = new ArrayList<>(size);
+        for (int i = 0; i < Math.min(size, cells.length); i++) {
+            int j = i + random.nextInt(cells.length - i);
+            int cell = cells[j];
+            cells[j] = cells[i];
+            cells[i] = cell;
+            units.add(new Unit("Unit " + i, "Knight", 50, 10, 10, "melee", null, null, cell % width, cell / width));
+        }
+        return units;
+    }
+
+    // Армия по колонкам, как её отдаёт игра в getSuitableUnits
+    static List<List<Unit>> columns(Army army, int firstColumn) {
+        List<List<Unit>> columns = new ArrayList<>(3);
+        for (int i = 0; i < 3; i++) {
+            columns.add(new ArrayList<>());
+        }
+        for (Unit unit : army.getUnits()) {
+            columns.get(unit.getxCoordinate() - firstColumn).add(unit);
+        }
+        return columns;
+    }
+}
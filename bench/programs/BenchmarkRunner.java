@@ -0,0 +1,41 @@
+package programs;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+// Запуск всех бенчмарков с профилировщиком сборщика мусора: кроме операций в секунду печатается выделение памяти на операцию
+// (gc.alloc.rate.norm). Аргументы командной строки - обычные аргументы JMH, например, имя бенчмарка или -p units=60.
+// Умолчания ниже подставляются только там, где командная строка ничего не задала: OptionsBuilder складывает свои include с include
+// родителя, а остальные свои значения ставит поверх родительских, поэтому безусловные умолчания глушили бы -f, -wi, -i и имя бенчмарка
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include("programs\\..*Benchmark");
+        }
+        if (!commandLine.getForkCount().hasValue()) {
+            options.forks(1);
+        }
+        if (!commandLine.getWarmupIterations().hasValue()) {
+            options.warmupIterations(3);
+        }
+        if (!commandLine.getWarmupTime().hasValue()) {
+            options.warmupTime(TimeValue.seconds(1));
+        }
+        if (!commandLine.getMeasurementIterations().hasValue()) {
+            options.measurementIterations(5);
+        }
+        if (!commandLine.getMeasurementTime().hasValue()) {
+            options.measurementTime(TimeValue.seconds(1));
+        }
+        new Runner(options.build()).run();
+    }
+}
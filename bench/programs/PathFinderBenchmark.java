@@ -0,0 +1,65 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Поиск пути на поле 27x21 при разной плотности бойцов: одиночный запрос вне битвы, тот же запрос внутри битвы
+// (карта занятости и поля расстояний уже есть) и пакетный поиск до всех целей сразу
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PathFinderBenchmark {
+    private static final int PAIRS = 64;
+
+    @Param({"10", "60", "150", "300"})
+    public int units;
+
+    @Param({"false", "true"})
+    public boolean inBattle;
+
+    private final UnitTargetPathFinderImpl finder = new UnitTargetPathFinderImpl();
+    private List<Unit> allUnits;
+    private Unit[] sources;
+    private Unit[] targets;
+    private List<Unit> candidates;
+    private BattleContext context;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        allUnits = BenchmarkFixtures.scatter(units, 42);
+        sources = new Unit[PAIRS];
+        targets = new Unit[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            sources[i] = allUnits.get((i * 7) % allUnits.size());
+            targets[i] = allUnits.get((i * 13 + 1) % allUnits.size());
+        }
+        candidates = allUnits.subList(0, Math.min(allUnits.size(), 16));
+        if (inBattle) {
+            context = BattleContext.open(allUnits, List.of());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public List<Edge> getTargetPath() {
+        int i = next++ & (PAIRS - 1);
+        return finder.getTargetPath(sources[i], targets[i], allUnits);
+    }
+
+    @Benchmark
+    public List<UnitTargetPathFinderImpl.TargetPath> getTargetPaths() {
+        int i = next++ & (PAIRS - 1);
+        return finder.getTargetPaths(sources[i], candidates, allUnits);
+    }
+}
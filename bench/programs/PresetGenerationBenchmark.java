@@ -0,0 +1,48 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Генерация армии при разных бюджетах и размерах каталога: полный generate (с кешем составов - это в основном расстановка)
+// и сам подбор состава без кеша
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PresetGenerationBenchmark {
+
+    @Param({"500", "1500", "5000"})
+    public int budget;
+
+    @Param({"4", "16", "64"})
+    public int catalogSize;
+
+    @Param({"SIMPLE", "KNAPSACK"})
+    public GeneratePresetImpl.Method method;
+
+    private final GeneratePresetImpl generator = new GeneratePresetImpl();
+    private List<Unit> catalog;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = BenchmarkFixtures.catalog(catalogSize, 42);
+        generator.setHeadless(true);
+        generator.setMethod(method);
+        generator.setSeed(42);
+    }
+
+    @Benchmark
+    public Army generate() {
+        return generator.generate(catalog, budget);
+    }
+
+    @Benchmark
+    public Object compose() {
+        return method == GeneratePresetImpl.Method.KNAPSACK
+                ? generator.generateKnapsackMethod(catalog, budget)
+                : generator.generateSimpleMethod(catalog, budget);
+    }
+}
@@ -0,0 +1,65 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Выбор открытых для атаки бойцов: прямой пересчёт по маскам, он же в переиспользуемый список и ответ индекса внутри битвы
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TargetSelectionBenchmark {
+
+    @Param({"9", "30", "63"})
+    public int units;
+
+    private final SuitableForAttackUnitsFinderImpl finder = new SuitableForAttackUnitsFinderImpl();
+    private final List<Unit> reusable = new ArrayList<>();
+    private List<List<Unit>> columns;
+    private BattleContext context;
+    private boolean humanAttack;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Army army = BenchmarkFixtures.army(units, 0, 42);
+        columns = BenchmarkFixtures.columns(army, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+            context = null;
+        }
+    }
+
+    @Benchmark
+    public List<Unit> getSuitableUnits() {
+        humanAttack = !humanAttack;
+        return finder.getSuitableUnits(columns, humanAttack);
+    }
+
+    @Benchmark
+    public void getSuitableUnitsReusable(Blackhole blackhole) {
+        humanAttack = !humanAttack;
+        reusable.clear();
+        finder.getSuitableUnits(columns, humanAttack, reusable);
+        blackhole.consume(reusable);
+    }
+
+    @Benchmark
+    public List<Unit> getSuitableUnitsIndexed() {
+        if (context == null) {
+            List<Unit> all = new ArrayList<>();
+            columns.forEach(all::addAll);
+            context = BattleContext.open(all, List.of());
+        }
+        humanAttack = !humanAttack;
+        return finder.getSuitableUnits(columns, humanAttack);
+    }
+}
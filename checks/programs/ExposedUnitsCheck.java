@@ -0,0 +1,80 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+// Проверка индекса открытых бойцов: армии разной ширины и плотности гибнут по одному бойцу в случайном порядке, и после каждой
+// гибели цели из индекса сверяются с прямым пересчётом SuitableForAttackUnitsFinderImpl для обоих направлений атаки.
+// Гибель сообщается через контекст битвы, как это делает симулятор. Запуск без аргументов; при расхождении процесс завершается с кодом 1
+public class ExposedUnitsCheck {
+    private static final int ARMIES = 400;
+
+    public static void main(String[] args) {
+        int rows = BattlefieldGeometry.DEFAULT.getHeight();
+        int checked = 0;
+        int mismatches = 0;
+        for (int seed = 0; seed < ARMIES; seed++) {
+            SplittableRandom random = new SplittableRandom(seed);
+            int columns = 1 + random.nextInt(BattlefieldGeometry.DEFAULT.getDeployColumns() + 2);
+            List<List<Unit>> unitsByColumn = army(columns, rows, 0.2 + 0.8 * random.nextDouble(), random);
+            List<Unit> units = new ArrayList<>();
+            unitsByColumn.forEach(units::addAll);
+
+            try (BattleContext context = BattleContext.open(units, List.of())) {
+                ExposedUnitsIndex index = context.exposedUnits(unitsByColumn);
+                if (index == null) {
+                    System.out.println("Армия " + seed + ": индекс не построен");
+                    mismatches++;
+                    continue;
+                }
+                mismatches += compare(index, unitsByColumn, seed, "до гибели бойцов");
+
+                Collections.shuffle(units, new Random(random.nextLong()));
+                for (Unit unit : units) {
+                    unit.setAlive(false);
+                    context.onUnitDied(unit);
+                    mismatches += compare(index, unitsByColumn, seed, "после гибели " + unit.getName());
+                    checked++;
+                }
+            }
+        }
+        if (mismatches > 0) {
+            System.out.println("Индекс открытых бойцов разошёлся с прямым пересчётом " + mismatches + " раз");
+            System.exit(1);
+        }
+        System.out.println("Индекс открытых бойцов совпал с прямым пересчётом после " + checked + " гибелей в " + ARMIES + " армиях");
+    }
+
+    // Колонки армии: в каждой ячейке боец стоит с вероятностью density
+    private static List<List<Unit>> army(int columns, int rows, double density, SplittableRandom random) {
+        List<List<Unit>> unitsByColumn = new ArrayList<>(columns);
+        for (int column = 0; column < columns; column++) {
+            List<Unit> units = new ArrayList<>();
+            for (int row = 0; row < rows; row++) {
+                if (random.nextDouble() < density) {
+                    String name = "Unit " + column + ":" + row;
+                    units.add(new Unit(name, "Knight", 50, 10, 10, "melee", null, null, column, row));
+                }
+            }
+            unitsByColumn.add(units);
+        }
+        return unitsByColumn;
+    }
+
+    private static int compare(ExposedUnitsIndex index, List<List<Unit>> unitsByColumn, int seed, String moment) {
+        int mismatches = 0;
+        for (boolean humanAttack : new boolean[]{true, false}) {
+            if (!index.isConsistentWith(unitsByColumn, humanAttack)) {
+                System.out.println("Армия " + seed + ", " + (humanAttack ? "ход игрока" : "ход компьютера") + ", " + moment
+                        + ": в индексе " + index.view(humanAttack).size() + " целей");
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+}
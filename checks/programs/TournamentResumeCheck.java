@@ -0,0 +1,70 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Проверка продолжения турнира: один и тот же сезон играется без остановок, по частям на одном объекте
+// и с остановкой, контрольной точкой и продолжением на новом объекте. Рейтинг и таблица во всех трёх случаях должны совпасть.
+// Запуск без аргументов; при расхождении процесс завершается с кодом 1
+public class TournamentResumeCheck {
+
+    public static void main(String[] args) throws Exception {
+        List<Unit> catalog = catalog();
+        int[] budgets = new int[12];
+        for (int i = 0; i < budgets.length; i++) {
+            budgets[i] = 600 + 50 * i;
+        }
+
+        Tournament uninterrupted = new Tournament(catalog, budgets, 7);
+        uninterrupted.run();
+
+        Tournament split = new Tournament(catalog, budgets, 7);
+        split.run(23);
+        split.run();
+
+        Path checkpoint = Files.createTempDirectory("tournament").resolve("season.bin");
+        Tournament stopped = new Tournament(catalog, budgets, 7);
+        stopped.setCheckpoint(checkpoint, 10);
+        stopped.run(23);
+        Tournament resumed = new Tournament(catalog, budgets, 7);
+        resumed.setCheckpoint(checkpoint, 10);
+        resumed.run();
+
+        boolean ok = same(uninterrupted, split, "по частям") & same(uninterrupted, resumed, "с контрольной точки");
+        Files.deleteIfExists(checkpoint);
+        if (!ok) {
+            System.exit(1);
+        }
+        System.out.println("Продолжение турнира совпадает с непрерывным прогоном");
+    }
+
+    // Каталог из четырёх типов: у каждого свой бонус против следующего, чтобы исходы битв не были предрешены
+    private static List<Unit> catalog() {
+        String[] types = {"Knight", "Archer", "Swordsman", "Pikeman"};
+        List<Unit> catalog = new ArrayList<>(types.length);
+        for (int i = 0; i < types.length; i++) {
+            catalog.add(new Unit(types[i], types[i], 40 + 10 * i, 10 + 5 * i, 20 + 10 * i, i % 2 == 0 ? "melee" : "ranged",
+                    Map.of(types[(i + 1) % types.length], 1.5), Map.of("melee", 1.2), 0, 0));
+        }
+        return catalog;
+    }
+
+    private static boolean same(Tournament expected, Tournament actual, String mode) {
+        boolean same = actual.isFinished()
+                && Arrays.equals(expected.getElo().getRatings(), actual.getElo().getRatings());
+        for (int i = 0; same && i < expected.getArmies(); i++) {
+            same = expected.getWinMatrix().getTotalWins(i) == actual.getWinMatrix().getTotalWins(i);
+        }
+        if (!same) {
+            System.out.println("Турнир " + mode + " разошёлся с непрерывным: сыграно " + actual.getPlayedPairings() +
+                    " из " + actual.getPairings() + " пар");
+        }
+        return same;
+    }
+}
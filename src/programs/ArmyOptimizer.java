@@ -0,0 +1,348 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+// Подбор армии под конкретного соперника. Обычная генерация ничего не знает о противнике, здесь же состав и строй ищутся
+// генетическим алгоритмом в пределах maxPoints, а пригодность кандидата - доля побед в серии битв без вывода против заданной армии.
+// Начальное поколение - составы "хапуги" и точного рюкзака в каждом строю и их мутации. Все кандидаты играют с одними и теми же
+// зёрнами битв, так что сравниваются на одинаковых условиях, а оценка кандидата детерминирована и запоминается:
+// повторно встреченный состав битвами не оценивается. Новые кандидаты поколения оцениваются параллельно через fork-join.
+// Битвы оценки идут через BattleMonteCarloRunner, то есть по модели хода ModelAttackResolver, а не по программам бойцов игры:
+// боец за ход доходит до ближайшей открытой цели, как бы далеко она ни была, стрелки подходят вплотную, как пехота, урон
+// считается по формуле модели. Найденная армия - лучшая против соперника в этой модели, в игре её перевес может быть другим
+public class ArmyOptimizer {
+    // Во сколько раз больше попыток дописать бойца, чем типов в каталоге, прежде чем считать бюджет исчерпанным
+    private static final int FILL_ATTEMPTS = 4;
+
+    private final ForkJoinPool pool;
+
+    private int population = 16;
+    private int generations = 20;
+    private int trials = 32;
+    private long seed;
+    private List<Formation> formations = List.of(Formation.STRONGEST_FRONT, Formation.RANDOM);
+
+    public ArmyOptimizer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ArmyOptimizer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void setPopulation(int population) {
+        this.population = population;
+    }
+
+    public void setGenerations(int generations) {
+        this.generations = generations;
+    }
+
+    // Битв на оценку одного кандидата
+    public void setTrials(int trials) {
+        this.trials = trials;
+    }
+
+    // Зерно и поиска, и битв: с тем же зерном поиск повторяется в точности
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    // Строи, из которых выбирает поиск
+    public void setFormations(List<Formation> formations) {
+        this.formations = List.copyOf(formations);
+    }
+
+    // Ищем армию из бойцов каталога на maxPoints, которая лучше всего бьёт opponent. Найденная армия играет за компьютер
+    // (как и армия из обычной генерации), соперник - за игрока. Соперник из обычной генерации стоит там же, где и кандидаты,
+    // поэтому он переносится на край игрока; соперник вне зон развёртывания отвергается. Армия соперника не меняется
+    public OptimizedPreset optimize(List<Unit> unitList, int maxPoints, Army opponent) {
+        Search search = new Search(unitList, Math.max(maxPoints, 0), BattleMonteCarloRunner.asPlayer(opponent));
+
+        // Начальное поколение: "хапуга" и точный рюкзак в каждом строю, остальное добираем их мутациями
+        List<Genome> seeds = new ArrayList<>();
+        for (GeneratePresetImpl.Method method : GeneratePresetImpl.Method.values()) {
+            GeneratePresetImpl generator = new GeneratePresetImpl();
+            generator.setMethod(method);
+            int[] counts = generator.counts(unitList, search.maxPoints);
+            for (int formation = 0; formation < formations.size(); formation++) {
+                seeds.add(search.seed(counts.clone(), formation, search.random.nextLong()));
+            }
+        }
+        List<Genome> current = new ArrayList<>(seeds);
+        while (current.size() < Math.max(population, 1)) {
+            current.add(search.mutate(seeds.get(search.random.nextInt(seeds.size()))));
+        }
+        search.evaluate(current);
+        current = search.survivors(current, new ArrayList<>());
+
+        // Поколения: потомки от турнирного отбора, скрещивания и мутации, в следующее поколение проходят лучшие из родителей и потомков
+        for (int generation = 0; generation < generations; generation++) {
+            List<Genome> offspring = new ArrayList<>(population);
+            for (int i = 0; i < population; i++) {
+                Genome child = search.crossover(search.select(current), search.select(current));
+                offspring.add(search.mutate(child));
+            }
+            search.evaluate(offspring);
+            current = search.survivors(current, offspring);
+        }
+
+        Genome best = current.get(0);
+        return new OptimizedPreset(best.counts.clone(), formations.get(best.formation), search.deploy(best),
+                search.fitness.get(best), search.fitness.size(), search.cacheHits.sum());
+    }
+
+    // Пригодность по итогу серии: доля побед компьютера, ничья - за половину
+    static double fitness(MonteCarloResult result) {
+        return result.getTrials() == 0 ? 0 : (result.getLosses() + 0.5 * result.getDraws()) / result.getTrials();
+    }
+
+    // Кандидат: число бойцов каждого типа, номер строя и зерно расстановки (для случайного строя)
+    static final class Genome {
+        final int[] counts;
+        final int formation;
+        final long arrangement;
+        final int cost;
+        private final int hash;
+
+        Genome(int[] counts, int formation, long arrangement, int cost) {
+            this.counts = counts;
+            this.formation = formation;
+            this.arrangement = arrangement;
+            this.cost = cost;
+            this.hash = 31 * (31 * Arrays.hashCode(counts) + formation) + Long.hashCode(arrangement);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Genome)) {
+                return false;
+            }
+            Genome other = (Genome) o;
+            return formation == other.formation && arrangement == other.arrangement && Arrays.equals(counts, other.counts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // Состояние одного поиска: каталог, соперник, генератор случайных чисел поиска и запомненные оценки кандидатов
+    private final class Search {
+        private final List<Unit> unitList;
+        private final int maxPoints;
+        private final Army opponent;
+        private final RandomSource random = RandomSource.seeded(seed);
+        private final BattleMonteCarloRunner runner = new BattleMonteCarloRunner(pool);
+        private final Map<Genome, MonteCarloResult> fitness = new ConcurrentHashMap<>();
+        private final LongAdder cacheHits = new LongAdder();
+
+        // Пользуется ли строй случайностью. Если нет, зерно расстановки на армию не влияет, и у кандидата оно всегда 0 -
+        // иначе одна и та же армия с разными зёрнами считалась бы разными кандидатами и оценивалась битвами заново
+        private final boolean[] randomized;
+
+        Search(List<Unit> unitList, int maxPoints, Army opponent) {
+            this.unitList = unitList;
+            this.maxPoints = maxPoints;
+            this.opponent = opponent;
+            this.randomized = new boolean[formations.size()];
+            for (int formation = 0; formation < randomized.length; formation++) {
+                randomized[formation] = randomized(formations.get(formation));
+            }
+        }
+
+        // Расставляем каталог (по бойцу каждого типа) с источником, который считает обращения к себе. Не обратился - строй детерминирован
+        private boolean randomized(Formation formation) {
+            BattlefieldGeometry geometry = BattlefieldGeometry.DEFAULT;
+            CountingRandom probe = new CountingRandom(RandomSource.seeded(seed));
+            formation.arrange(unitList, geometry.getDeployColumns(), geometry.getHeight(), probe, new int[unitList.size()]);
+            return probe.calls > 0;
+        }
+
+        // Затравочный кандидат - состав как есть, без починки и добора
+        Genome seed(int[] counts, int formation, long arrangement) {
+            int cost = 0;
+            for (int type = 0; type < counts.length; type++) {
+                cost += counts[type] * unitList.get(type).getCost();
+            }
+            return new Genome(counts, formation, randomized[formation] ? arrangement : 0, cost);
+        }
+
+        // Кандидат с починкой: лишних бойцов снимаем, пока состав не влезет в бюджет, на сдачу добираем случайных
+        Genome genome(int[] counts, int formation, long arrangement) {
+            int cost = 0;
+            for (int type = 0; type < counts.length; type++) {
+                counts[type] = Math.max(0, Math.min(counts[type], GeneratePresetImpl.MAX_UNITS_IN_SQUAD));
+                cost += counts[type] * unitList.get(type).getCost();
+            }
+            while (cost > maxPoints) {
+                int type = random.nextInt(counts.length);
+                if (counts[type] > 0) {
+                    counts[type]--;
+                    cost -= unitList.get(type).getCost();
+                }
+            }
+            for (int attempt = 0; attempt < counts.length * FILL_ATTEMPTS; attempt++) {
+                int type = random.nextInt(counts.length);
+                int unitCost = unitList.get(type).getCost();
+                if (counts[type] < GeneratePresetImpl.MAX_UNITS_IN_SQUAD && cost + unitCost <= maxPoints) {
+                    counts[type]++;
+                    cost += unitCost;
+                }
+            }
+            return new Genome(counts, formation, randomized[formation] ? arrangement : 0, cost);
+        }
+
+        // Мутация: плюс боец, минус боец, замена бойца одного типа бойцом другого или другой строй
+        Genome mutate(Genome genome) {
+            int[] counts = genome.counts.clone();
+            int formation = genome.formation;
+            long arrangement = genome.arrangement;
+            if (counts.length == 0) {
+                return genome;
+            }
+            int from = random.nextInt(counts.length);
+            int to = random.nextInt(counts.length);
+            switch (random.nextInt(4)) {
+                case 0:
+                    counts[to]++;
+                    break;
+                case 1:
+                    counts[from]--;
+                    break;
+                case 2:
+                    if (counts[from] > 0) {
+                        counts[from]--;
+                        counts[to]++;
+                    }
+                    break;
+                default:
+                    formation = random.nextInt(formations.size());
+                    arrangement = random.nextLong();
+                    break;
+            }
+            return genome(counts, formation, arrangement);
+        }
+
+        // Равномерное скрещивание: число бойцов каждого типа от случайного родителя, строй - от первого
+        Genome crossover(Genome first, Genome second) {
+            int[] counts = new int[first.counts.length];
+            for (int type = 0; type < counts.length; type++) {
+                counts[type] = random.nextBoolean() ? first.counts[type] : second.counts[type];
+            }
+            return genome(counts, first.formation, first.arrangement);
+        }
+
+        // Турнир из двух: поколение отсортировано от лучших, так что выигрывает меньший номер
+        Genome select(List<Genome> generation) {
+            return generation.get(Math.min(random.nextInt(generation.size()), random.nextInt(generation.size())));
+        }
+
+        // Лучшие population кандидатов из родителей и потомков, без повторов. При равной пригодности выше тот, кто нанёс больше урона
+        // (пока соперник не по зубам никому, побед нет ни у кого, а урон всё равно показывает, куда двигаться), затем - дешёвый состав
+        List<Genome> survivors(List<Genome> parents, List<Genome> offspring) {
+            Set<Genome> unique = new LinkedHashSet<>(parents);
+            unique.addAll(offspring);
+            List<Genome> all = new ArrayList<>(unique);
+            all.sort(Comparator.comparingDouble((Genome genome) -> ArmyOptimizer.fitness(fitness.get(genome)))
+                    .thenComparingDouble(genome -> fitness.get(genome).getMeanPlayerDamageTaken())
+                    .reversed()
+                    .thenComparingInt(genome -> genome.cost));
+            return new ArrayList<>(all.subList(0, Math.min(all.size(), Math.max(population, 1))));
+        }
+
+        // Оцениваем кандидатов, которых ещё не видели. Каждый новый - один раз, даже если встретился в поколении дважды
+        void evaluate(List<Genome> candidates) {
+            List<Genome> fresh = new ArrayList<>();
+            Set<Genome> queued = new HashSet<>();
+            for (Genome genome : candidates) {
+                if (fitness.containsKey(genome) || !queued.add(genome)) {
+                    cacheHits.increment();
+                } else {
+                    fresh.add(genome);
+                }
+            }
+            if (!fresh.isEmpty()) {
+                pool.invoke(new Evaluation(this, fresh, 0, fresh.size()));
+            }
+        }
+
+        // Армия кандидата: его состав, расставленный его строем
+        Army deploy(Genome genome) {
+            GeneratePresetImpl generator = new GeneratePresetImpl();
+            generator.setHeadless(true);
+            generator.setFormation(formations.get(genome.formation));
+            generator.setSeed(genome.arrangement);
+            return generator.deploy(unitList, genome.counts);
+        }
+
+        // Серия битв кандидата против соперника по модели хода. Зёрна битв общие для всех кандидатов
+        void score(Genome genome) {
+            fitness.put(genome, runner.run(opponent, deploy(genome), trials, seed));
+        }
+    }
+
+    // Источник случайности, который считает обращения к себе, - для проверки, пользуется ли строй случайностью
+    private static final class CountingRandom implements RandomSource {
+        private final RandomSource random;
+        private int calls;
+
+        CountingRandom(RandomSource random) {
+            this.random = random;
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            calls++;
+            return random.nextInt(bound);
+        }
+
+        @Override
+        public boolean nextBoolean() {
+            calls++;
+            return random.nextBoolean();
+        }
+
+        @Override
+        public long nextLong() {
+            calls++;
+            return random.nextLong();
+        }
+    }
+
+    // Задача на кандидатов [from, to): большой диапазон делится пополам, каждый кандидат - своя серия битв, которая делится дальше
+    private static final class Evaluation extends RecursiveAction {
+        private final Search search;
+        private final List<Genome> candidates;
+        private final int from;
+        private final int to;
+
+        Evaluation(Search search, List<Genome> candidates, int from, int to) {
+            this.search = search;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Evaluation(search, candidates, from, middle), new Evaluation(search, candidates, middle, to));
+                return;
+            }
+            search.score(candidates.get(from));
+        }
+    }
+}
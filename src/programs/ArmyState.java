@@ -0,0 +1,102 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.Arrays;
+
+// Состояние бойцов битвы в виде структуры массивов: здоровье, атака и координаты - параллельными int-массивами по номеру бойца,
+// живость - битовой маской. Горячие циклы симулятора (очередь ходов, подсчёт живых и здоровья, карта занятости) идут по плотным
+// примитивным массивам, а не по объектам Unit, разбросанным по куче.
+// Unit остаётся источником истины на границе с игрой: после того как программа бойца отработала, состояние затрагиваемых бойцов
+// забирается из Unit (pull)
+final class ArmyState {
+    private final Unit[] units;
+    final int[] hp;
+    final int[] attack;
+    final int[] x;
+    final int[] y;
+    private final long[] alive;
+
+    ArmyState(Unit[] units) {
+        this.units = units;
+        this.hp = new int[units.length];
+        this.attack = new int[units.length];
+        this.x = new int[units.length];
+        this.y = new int[units.length];
+        this.alive = new long[(units.length + 63) >>> 6];
+        for (int id = 0; id < units.length; id++) {
+            attack[id] = units[id].getBaseAttack();
+            pull(id);
+        }
+    }
+
+    int size() {
+        return units.length;
+    }
+
+    boolean isAlive(int id) {
+        return (alive[id >>> 6] & (1L << id)) != 0;
+    }
+
+    // Забираем здоровье, координаты и живость бойца из Unit. Атака за битву не меняется, её не перечитываем
+    void pull(int id) {
+        Unit unit = units[id];
+        hp[id] = unit.getHealth();
+        x[id] = unit.getxCoordinate();
+        y[id] = unit.getyCoordinate();
+        setAlive(id, unit.isAlive());
+    }
+
+    void setAlive(int id, boolean value) {
+        if (value) {
+            alive[id >>> 6] |= 1L << id;
+        } else {
+            alive[id >>> 6] &= ~(1L << id);
+        }
+    }
+
+    // Число живых среди бойцов с номерами [from, to): по слову маски на 64 бойца
+    int aliveCount(int from, int to) {
+        if (from >= to) {
+            return 0;
+        }
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        int count = 0;
+        for (int word = first; word <= last; word++) {
+            long bits = alive[word];
+            if (word == first) {
+                bits &= -1L << from;
+            }
+            if (word == last) {
+                bits &= -1L >>> (63 - ((to - 1) & 63));
+            }
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+
+    // Суммарное здоровье бойцов [from, to). Отрицательное здоровье павших не считаем
+    long totalHealth(int from, int to) {
+        long health = 0;
+        for (int id = from; id < to; id++) {
+            health += Math.max(hp[id], 0);
+        }
+        return health;
+    }
+
+    // Номера бойцов [from, to) по убыванию атаки, при равной атаке - по возрастанию номера. Сортируем упакованные в long ключи,
+    // без объектов и компаратора
+    int[] byAttackDescending(int from, int to) {
+        long[] keys = new long[to - from];
+        for (int id = from; id < to; id++) {
+            keys[id - from] = ((long) ~attack[id] << 32) | id;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+}
@@ -0,0 +1,276 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.PrintBattleLog;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+// Асинхронный журнал битвы. Симулятор не ждёт, пока журнал допишется: он кладёт компактную запись об ударе
+// (кто бил, кого, изменение здоровья цели, номер столкновения) в ограниченный кольцевой буфер без блокировок,
+// а отдельный поток-писатель забирает записи пачками и отдаёт их приёмнику. Что делать, когда буфер полон, задаёт политика
+public class AsyncBattleLog implements AutoCloseable {
+
+    // Политика переполнения: ждать места, отбрасывать новые записи или, когда буфер заполнен больше чем наполовину, пропускать только каждую N-ю
+    public enum Backpressure {
+        BLOCK,
+        DROP,
+        SAMPLE
+    }
+
+    // Приёмник пачек записей. Вызывается только из потока-писателя
+    public interface Sink {
+        void write(Batch batch);
+    }
+
+    // Пачка записей. Действительна только во время вызова приёмника
+    public static final class Batch {
+        private final int[] attackers;
+        private final int[] targets;
+        private final int[] hpDeltas;
+        private final int[] rounds;
+        private int size;
+
+        private Batch(int capacity) {
+            this.attackers = new int[capacity];
+            this.targets = new int[capacity];
+            this.hpDeltas = new int[capacity];
+            this.rounds = new int[capacity];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int attacker(int i) {
+            return attackers[i];
+        }
+
+        // Номер цели или -1, если удар прошёл мимо
+        public int target(int i) {
+            return targets[i];
+        }
+
+        public int hpDelta(int i) {
+            return hpDeltas[i];
+        }
+
+        public int round(int i) {
+            return rounds[i];
+        }
+    }
+
+    private static final int DEFAULT_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Старший бит tail: журнал закрыт, и новых позиций больше не выдаётся
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    // Кольцевой буфер: записи лежат в параллельных массивах, а номер последовательности у каждой ячейки
+    // говорит, свободна ли она для записи (sequence == позиция) или уже заполнена (sequence == позиция + 1).
+    // Закрытие ставит старший бит прямо в tail: производитель занимает позицию той же CAS, что и раньше, и CAS по запечатанному tail
+    // не проходит, поэтому после закрытия набор занятых позиций больше не меняется, и писатель дочитывает ровно до него
+    private final int capacity;
+    private final int mask;
+    private final int[] attackers;
+    private final int[] targets;
+    private final int[] hpDeltas;
+    private final int[] rounds;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    private final Backpressure backpressure;
+    private final int sampleRate;
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private final Sink sink;
+    private final Batch batch;
+    private final Thread writer;
+
+    // Журнал с запущенным потоком-писателем. capacity округляется вверх до степени двойки. sampleRate учитывается только для политики SAMPLE
+    public static AsyncBattleLog start(Sink sink, int capacity, Backpressure backpressure, int sampleRate) {
+        AsyncBattleLog log = new AsyncBattleLog(sink, capacity, backpressure, sampleRate);
+        log.writer.start();
+        return log;
+    }
+
+    // Поток-писатель запускается в start, когда журнал уже построен
+    private AsyncBattleLog(Sink sink, int capacity, Backpressure backpressure, int sampleRate) {
+        this.capacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.attackers = new int[this.capacity];
+        this.targets = new int[this.capacity];
+        this.hpDeltas = new int[this.capacity];
+        this.rounds = new int[this.capacity];
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.backpressure = backpressure;
+        this.sampleRate = Math.max(sampleRate, 1);
+        this.sink = sink;
+        this.batch = new Batch(Math.min(DEFAULT_BATCH, this.capacity));
+        this.writer = new Thread(this::drainLoop, "battle-log-writer");
+        this.writer.setDaemon(true);
+    }
+
+    // Записываем удар. Вызывается из игрового потока и почти никогда не ждёт
+    public void publish(int attacker, int target, int hpDelta, int round) {
+        long current = tail.get();
+        if (current < 0) {
+            dropped.increment();
+            return;
+        }
+        if (backpressure == Backpressure.SAMPLE && current - head >= capacity / 2
+                && sampleCounter.getAndIncrement() % sampleRate != 0) {
+            dropped.increment();
+            return;
+        }
+
+        long position;
+        while (true) {
+            position = tail.get();
+            if (position < 0) {
+                // Журнал закрыли, пока мы искали место
+                dropped.increment();
+                return;
+            }
+            long sequence = sequences.get((int) position & mask);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                // Буфер полон. Ждём места только при политике BLOCK; закрытие журнала видно на следующем чтении tail
+                if (backpressure != Backpressure.BLOCK) {
+                    dropped.increment();
+                    return;
+                }
+                LockSupport.unpark(writer);
+                Thread.onSpinWait();
+            }
+        }
+
+        int slot = (int) position & mask;
+        attackers[slot] = attacker;
+        targets[slot] = target;
+        hpDeltas[slot] = hpDelta;
+        rounds[slot] = round;
+        sequences.set(slot, position + 1);
+        published.increment();
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    // Закрываем журнал: новые записи отбрасываются и больше не ждут места, писатель дописывает всё, что успело попасть в буфер, и останавливается
+    @Override
+    public void close() {
+        tail.getAndAccumulate(CLOSED, (current, closed) -> current | closed);
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        while (true) {
+            long end = tail.get();
+            if (drain() == 0) {
+                // Запечатанный tail - последняя выданная позиция. Всё до неё вычитано - дальше записей не будет
+                if (end < 0 && head == (end & ~CLOSED)) {
+                    return;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    // Забираем из буфера пачку записей, идущих подряд, и отдаём приёмнику
+    private int drain() {
+        long position = head;
+        int count = 0;
+        while (count < batch.attackers.length) {
+            int slot = (int) position & mask;
+            if (sequences.get(slot) != position + 1) {
+                break;
+            }
+            batch.attackers[count] = attackers[slot];
+            batch.targets[count] = targets[slot];
+            batch.hpDeltas[count] = hpDeltas[slot];
+            batch.rounds[count] = rounds[slot];
+            sequences.set(slot, position + capacity);
+            position++;
+            count++;
+        }
+        if (count > 0) {
+            head = position;
+            batch.size = count;
+
+            // Сломавшийся приёмник не должен останавливать писателя, иначе игровой поток упрётся в полный буфер
+            try {
+                sink.write(batch);
+            } catch (RuntimeException e) {
+                dropped.add(count);
+            }
+        }
+        return count;
+    }
+
+    // Текстовый приёмник: по строке на удар. names переводит номер бойца в имя
+    public static Sink textSink(PrintStream out, IntFunction<String> names) {
+        return batch -> {
+            StringBuilder text = new StringBuilder(batch.size() * 64);
+            for (int i = 0; i < batch.size(); i++) {
+                text.append("Столкновение ").append(batch.round(i)).append(": ").append(names.apply(batch.attacker(i)));
+                if (batch.target(i) < 0) {
+                    text.append(" не нашёл цели").append(System.lineSeparator());
+                } else {
+                    text.append(" атакует ").append(names.apply(batch.target(i)))
+                            .append(", здоровье ").append(batch.hpDelta(i)).append(System.lineSeparator());
+                }
+            }
+            out.print(text);
+        };
+    }
+
+    // Приёмник для штатного журнала игры. Писатель не трогает бойцов идущей битвы: копии армий снимаются здесь, на вызывающем потоке
+    // и до начала битвы, номера бойцов - как в симуляторе (сначала армия игрока, затем компьютера). По записям ударов у копий целей
+    // меняется здоровье, и журнал игры получает копии: здоровье цели - после удара, положение бойцов - на начало битвы.
+    // Один такой приёмник - на одну битву этих армий
+    public static Sink printSink(PrintBattleLog printBattleLog, Army playerArmy, Army computerArmy) {
+        List<Unit> units = new ArrayList<>(BattleMonteCarloRunner.copy(playerArmy).getUnits());
+        units.addAll(BattleMonteCarloRunner.copy(computerArmy).getUnits());
+        Unit[] roster = units.toArray(new Unit[0]);
+        return batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                Unit target = batch.target(i) < 0 ? null : roster[batch.target(i)];
+                if (target != null) {
+                    target.setHealth(target.getHealth() + batch.hpDelta(i));
+                    if (target.getHealth() <= 0) {
+                        target.setAlive(false);
+                    }
+                }
+                printBattleLog.printBattleLog(roster[batch.attacker(i)], target);
+            }
+        };
+    }
+}
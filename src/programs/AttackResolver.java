@@ -0,0 +1,17 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.List;
+
+// Кто и как наносит удар в симуляции. В обычной игре удар выполняет программа бойца, выданная игрой,
+// но у копий армий, которые гоняются пачками, программы нет - для них подставляется своя модель боя
+public interface AttackResolver {
+
+    // Удар бойца attacker по армии enemies. playerAttack - бьёт армия игрока (её противник стоит слева, и его фронт - последняя колонка),
+    // иначе бьёт армия компьютера. Сторону сообщает симулятор, угадывать её по координатам нельзя. Возвращает цель удара или null, если ударить было некого
+    Unit attack(Unit attacker, List<Unit> allies, List<Unit> enemies, boolean playerAttack) throws InterruptedException;
+
+    // Удар программой бойца, как в игре
+    AttackResolver PROGRAM = (attacker, allies, enemies, playerAttack) -> attacker.getProgram().attack();
+}
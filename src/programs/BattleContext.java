@@ -0,0 +1,194 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Состояние текущей битвы, общее для всех программ, которые вызываются в её ходе.
+// Симулятор открывает контекст в начале битвы и сообщает ему о событиях (перемещение, гибель бойца),
+// а поиск пути и прочие программы берут из него уже готовые структуры вместо того, чтобы строить их на каждый вызов.
+// Контекст привязан к потоку, поэтому параллельные битвы в разных потоках друг другу не мешают
+final class BattleContext implements AutoCloseable {
+    private static final ThreadLocal<BattleContext> CURRENT = new ThreadLocal<>();
+
+    private final BattleContext previous;
+    private final BattlefieldGeometry geometry;
+    private final OccupancyGrid grid;
+    private FlowFieldCache flowFields;
+
+    // Индексы открытых для атаки бойцов, по одному на армию. Ищутся по любому бойцу армии
+    private final Map<Unit, ExposedUnitsIndex> exposedUnits = new IdentityHashMap<>();
+
+    // Номера бойцов в битве: сначала армия игрока (номера [0, playerCount)), затем армия компьютера.
+    // И состояние каждого бойца в примитивных массивах по номеру
+    private final Unit[] roster;
+    private final Map<Unit, Integer> ids;
+    private final int playerCount;
+    private final ArmyState state;
+
+    // Сколько раз бойцы меняли позицию за битву. Симулятор по нему отличает затишье от манёвров
+    private long moves;
+
+    // Запись битвы, если она ведётся: сюда попадают фактические перемещения бойцов
+    private BattleReplayWriter replayWriter;
+
+    private BattleContext(BattleContext previous, BattlefieldGeometry geometry, List<Unit> allUnits, int playerCount) {
+        this.previous = previous;
+        this.geometry = geometry;
+        this.roster = allUnits.toArray(new Unit[0]);
+        this.playerCount = playerCount;
+        this.ids = new IdentityHashMap<>(roster.length * 2);
+        for (int id = 0; id < roster.length; id++) {
+            ids.putIfAbsent(roster[id], id);
+        }
+        this.state = new ArmyState(roster);
+        this.grid = new OccupancyGrid(geometry.getWidth(), geometry.getHeight());
+        this.grid.rebuild(state);
+    }
+
+    // Открываем контекст битвы и привязываем его к текущему потоку
+    static BattleContext open(List<Unit> playerUnits, List<Unit> computerUnits) {
+        return open(playerUnits, computerUnits, BattlefieldGeometry.DEFAULT);
+    }
+
+    static BattleContext open(List<Unit> playerUnits, List<Unit> computerUnits, BattlefieldGeometry geometry) {
+        List<Unit> allUnits = new ArrayList<>(playerUnits.size() + computerUnits.size());
+        allUnits.addAll(playerUnits);
+        allUnits.addAll(computerUnits);
+        BattleContext context = new BattleContext(CURRENT.get(), geometry, allUnits, playerUnits.size());
+        CURRENT.set(context);
+        return context;
+    }
+
+    // Контекст битвы, идущей в текущем потоке, либо null, если программа вызвана вне битвы
+    static BattleContext current() {
+        return CURRENT.get();
+    }
+
+    BattlefieldGeometry geometry() {
+        return geometry;
+    }
+
+    OccupancyGrid grid() {
+        return grid;
+    }
+
+    void setReplayWriter(BattleReplayWriter replayWriter) {
+        this.replayWriter = replayWriter;
+    }
+
+    // Номер бойца в битве или -1, если боец в ней не участвует
+    int idOf(Unit unit) {
+        Integer id = unit == null ? null : ids.get(unit);
+        return id == null ? -1 : id;
+    }
+
+    Unit unit(int id) {
+        return roster[id];
+    }
+
+    int size() {
+        return roster.length;
+    }
+
+    // Число бойцов армии игрока: их номера [0, playerCount()), у компьютера - [playerCount(), size())
+    int playerCount() {
+        return playerCount;
+    }
+
+    ArmyState state() {
+        return state;
+    }
+
+    long moves() {
+        return moves;
+    }
+
+    // Забираем состояние бойца из Unit после хода программы и возвращаем изменение его здоровья с прошлого наблюдения
+    int observe(int id) {
+        int before = state.hp[id];
+        state.pull(id);
+        return state.hp[id] - before;
+    }
+
+    // Поля расстояний до целей строятся по карте занятости этой битвы, заводим кеш при первом обращении
+    FlowFieldCache flowFields() {
+        if (flowFields == null) {
+            flowFields = new FlowFieldCache(geometry.engine(), grid, FlowFieldCache.DEFAULT_CAPACITY);
+        }
+        return flowFields;
+    }
+
+    // Индекс открытых бойцов армии, которой принадлежат переданные колонки. Строится при первом запросе
+    // и после перемещений бойцов армии, в остальное время только обновляется по событиям. null - если индекс неприменим
+    ExposedUnitsIndex exposedUnits(List<List<Unit>> unitsByColumn) {
+        Unit any = null;
+        for (List<Unit> column : unitsByColumn) {
+            if (!column.isEmpty()) {
+                any = column.get(0);
+                break;
+            }
+        }
+        if (any == null) {
+            return null;
+        }
+
+        ExposedUnitsIndex index = exposedUnits.get(any);
+        if (index == null || index.isStale()) {
+            index = ExposedUnitsIndex.build(this, unitsByColumn, geometry.getHeight());
+            if (index == null) {
+                return null;
+            }
+            for (List<Unit> column : unitsByColumn) {
+                for (Unit unit : column) {
+                    exposedUnits.put(unit, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    // Боец сменил позицию - переносим его бит на карте занятости, а индекс открытых бойцов его армии перестраиваем при следующем запросе.
+    // Если битва записывается, в запись попадает клетка, в которой боец оказался
+    void onUnitMoved(int fromX, int fromY, Unit unit) {
+        moves++;
+        int id = idOf(unit);
+        if (id >= 0) {
+            state.x[id] = unit.getxCoordinate();
+            state.y[id] = unit.getyCoordinate();
+            if (replayWriter != null) {
+                replayWriter.move(id, unit.getxCoordinate(), unit.getyCoordinate());
+            }
+        }
+        grid.move(fromX, fromY, unit.getxCoordinate(), unit.getyCoordinate());
+        ExposedUnitsIndex index = exposedUnits.get(unit);
+        if (index != null) {
+            index.markStale();
+        }
+    }
+
+    // Боец погиб - его ячейка освобождается, а в его строке открывается следующий боец
+    void onUnitDied(Unit unit) {
+        int id = idOf(unit);
+        if (id >= 0) {
+            state.setAlive(id, false);
+        }
+        grid.release(unit.getxCoordinate(), unit.getyCoordinate());
+        ExposedUnitsIndex index = exposedUnits.get(unit);
+        if (index != null && id >= 0) {
+            index.onUnitDied(id);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+}
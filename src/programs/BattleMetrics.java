@@ -0,0 +1,199 @@
+package programs;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Метрики горячих мест движка: поиск пути, выбор целей, битвы и генерация армий. Счётчики - LongAdder, распределения - гистограммы
+// LatencyHistogram, всё безопасно для параллельных битв. Текущие значения забираются снимком snapshot(), который можно опрашивать
+// сколь угодно часто.
+// Включаются системным свойством -Dprograms.metrics=true. Флаг - статическая константа, поэтому при выключенных метриках
+// JIT выбрасывает проверки вместе с замерами времени, и никакой цены за них код не платит
+public final class BattleMetrics {
+    public static final boolean ENABLED = Boolean.getBoolean("programs.metrics");
+
+    private static final LongAdder PATH_QUERIES = new LongAdder();
+    private static final LongAdder NODES_EXPANDED = new LongAdder();
+    private static final LongAdder SUITABLE_UNITS_CALLS = new LongAdder();
+    private static final LongAdder BATTLES = new LongAdder();
+    private static final LongAdder ROUNDS = new LongAdder();
+    private static final LongAdder ATTACKS = new LongAdder();
+    private static final LongAdder PRESETS = new LongAdder();
+    private static final LongAdder FLOW_FIELD_LOOKUPS = new LongAdder();
+    private static final LongAdder FLOW_FIELD_HITS = new LongAdder();
+
+    private static final LatencyHistogram PATH_LATENCY = new LatencyHistogram();
+    private static final LatencyHistogram PATH_NODES = new LatencyHistogram();
+    private static final LatencyHistogram BATTLE_ROUNDS = new LatencyHistogram();
+    private static final LatencyHistogram BATTLE_ATTACKS = new LatencyHistogram();
+    private static final LatencyHistogram PRESET_TIME = new LatencyHistogram();
+
+    private BattleMetrics() {
+    }
+
+    // Запрос пути: время в наносекундах и число раскрытых поиском ячеек
+    static void onPathQuery(long nanos, long nodesExpanded) {
+        PATH_QUERIES.increment();
+        NODES_EXPANDED.add(nodesExpanded);
+        PATH_LATENCY.record(nanos);
+        PATH_NODES.record(nodesExpanded);
+    }
+
+    static void onSuitableUnits() {
+        SUITABLE_UNITS_CALLS.increment();
+    }
+
+    // Завершённая битва: число столкновений и ударов в ней
+    static void onBattle(int rounds, int attacks) {
+        BATTLES.increment();
+        ROUNDS.add(rounds);
+        ATTACKS.add(attacks);
+        BATTLE_ROUNDS.record(rounds);
+        BATTLE_ATTACKS.record(attacks);
+    }
+
+    // Запрос к кешу полей расстояний: hit - путь взят из поля
+    static void onFlowField(boolean hit) {
+        FLOW_FIELD_LOOKUPS.increment();
+        if (hit) {
+            FLOW_FIELD_HITS.increment();
+        }
+    }
+
+    // Сгенерированная армия: время генерации в наносекундах
+    static void onPreset(long nanos) {
+        PRESETS.increment();
+        PRESET_TIME.record(nanos);
+    }
+
+    public static Snapshot snapshot() {
+        return new Snapshot(PATH_QUERIES.sum(), NODES_EXPANDED.sum(), SUITABLE_UNITS_CALLS.sum(), BATTLES.sum(),
+                ROUNDS.sum(), ATTACKS.sum(), PRESETS.sum(), PATH_LATENCY.snapshot(), PATH_NODES.snapshot(),
+                BATTLE_ROUNDS.snapshot(), BATTLE_ATTACKS.snapshot(), PRESET_TIME.snapshot(),
+                FLOW_FIELD_LOOKUPS.sum(), FLOW_FIELD_HITS.sum());
+    }
+
+    // Обнуление всех метрик, например, между прогонами
+    public static void reset() {
+        PATH_QUERIES.reset();
+        NODES_EXPANDED.reset();
+        SUITABLE_UNITS_CALLS.reset();
+        BATTLES.reset();
+        ROUNDS.reset();
+        ATTACKS.reset();
+        PRESETS.reset();
+        FLOW_FIELD_LOOKUPS.reset();
+        FLOW_FIELD_HITS.reset();
+        PATH_LATENCY.reset();
+        PATH_NODES.reset();
+        BATTLE_ROUNDS.reset();
+        BATTLE_ATTACKS.reset();
+        PRESET_TIME.reset();
+    }
+
+    // Значения метрик на момент снятия. Времена - в наносекундах
+    public static class Snapshot {
+        private final long pathQueries;
+        private final long nodesExpanded;
+        private final long suitableUnitsCalls;
+        private final long battles;
+        private final long rounds;
+        private final long attacks;
+        private final long presets;
+        private final LatencyHistogram.Snapshot pathLatency;
+        private final LatencyHistogram.Snapshot pathNodes;
+        private final LatencyHistogram.Snapshot battleRounds;
+        private final LatencyHistogram.Snapshot battleAttacks;
+        private final LatencyHistogram.Snapshot presetTime;
+        private final long flowFieldLookups;
+        private final long flowFieldHits;
+
+        Snapshot(long pathQueries, long nodesExpanded, long suitableUnitsCalls, long battles, long rounds, long attacks,
+                 long presets, LatencyHistogram.Snapshot pathLatency, LatencyHistogram.Snapshot pathNodes,
+                 LatencyHistogram.Snapshot battleRounds, LatencyHistogram.Snapshot battleAttacks,
+                 LatencyHistogram.Snapshot presetTime, long flowFieldLookups, long flowFieldHits) {
+            this.pathQueries = pathQueries;
+            this.nodesExpanded = nodesExpanded;
+            this.suitableUnitsCalls = suitableUnitsCalls;
+            this.battles = battles;
+            this.rounds = rounds;
+            this.attacks = attacks;
+            this.presets = presets;
+            this.pathLatency = pathLatency;
+            this.pathNodes = pathNodes;
+            this.battleRounds = battleRounds;
+            this.battleAttacks = battleAttacks;
+            this.presetTime = presetTime;
+            this.flowFieldLookups = flowFieldLookups;
+            this.flowFieldHits = flowFieldHits;
+        }
+
+        public long getPathQueries() {
+            return pathQueries;
+        }
+
+        public long getNodesExpanded() {
+            return nodesExpanded;
+        }
+
+        public long getSuitableUnitsCalls() {
+            return suitableUnitsCalls;
+        }
+
+        public long getBattles() {
+            return battles;
+        }
+
+        public long getRounds() {
+            return rounds;
+        }
+
+        public long getAttacks() {
+            return attacks;
+        }
+
+        public long getPresets() {
+            return presets;
+        }
+
+        public long getFlowFieldLookups() {
+            return flowFieldLookups;
+        }
+
+        public long getFlowFieldHits() {
+            return flowFieldHits;
+        }
+
+        // Доля запросов пути, обслуженных кешем полей расстояний
+        public double getFlowFieldHitRate() {
+            return flowFieldLookups == 0 ? 0 : (double) flowFieldHits / flowFieldLookups;
+        }
+
+        public LatencyHistogram.Snapshot getPathLatency() {
+            return pathLatency;
+        }
+
+        public LatencyHistogram.Snapshot getPathNodes() {
+            return pathNodes;
+        }
+
+        public LatencyHistogram.Snapshot getBattleRounds() {
+            return battleRounds;
+        }
+
+        public LatencyHistogram.Snapshot getBattleAttacks() {
+            return battleAttacks;
+        }
+
+        public LatencyHistogram.Snapshot getPresetTime() {
+            return presetTime;
+        }
+
+        @Override
+        public String toString() {
+            return "BattleMetrics{pathQueries=" + pathQueries + ", nodesExpanded=" + nodesExpanded +
+                    ", suitableUnitsCalls=" + suitableUnitsCalls + ", battles=" + battles + ", rounds=" + rounds +
+                    ", attacks=" + attacks + ", presets=" + presets + ", pathLatency=" + pathLatency +
+                    ", pathNodes=" + pathNodes + ", battleRounds=" + battleRounds + ", battleAttacks=" + battleAttacks +
+                    ", presetTime=" + presetTime + ", flowFieldLookups=" + flowFieldLookups + ", flowFieldHits=" + flowFieldHits + "}";
+        }
+    }
+}
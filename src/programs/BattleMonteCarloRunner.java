@@ -0,0 +1,144 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Пакетный прогон битв одной пары армий для оценки баланса. Каждая битва идёт на собственных копиях армий,
+// в режиме без вывода и со своим генератором случайных чисел, засеянным от общего зерна и номера битвы, поэтому
+// результат не зависит ни от числа потоков, ни от того, какой поток какую битву взял. Битвы раскладываются по ядрам через fork-join.
+// Битвы идут в SimulateBattleImpl, но у копий армий нет программ бойцов, и ход бойца выполняет модель ModelAttackResolver:
+// ближайшая открытая цель, путь до неё целиком за ход, урон по своей формуле. Поэтому результат - оценка баланса по модели,
+// а не прогноз исхода игровой битвы
+public class BattleMonteCarloRunner {
+    // Сколько битв подряд гоняет одна задача, прежде чем делиться работой
+    private static final int TRIALS_PER_TASK = 64;
+
+    private final ForkJoinPool pool;
+
+    public BattleMonteCarloRunner() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public BattleMonteCarloRunner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Прогоняем trials битв армии игрока против армии компьютера. Исходные армии не меняются
+    public MonteCarloResult run(Army playerArmy, Army computerArmy, int trials, long seed) {
+        return pool.invoke(new Trials(playerArmy, computerArmy, seed, 0, trials));
+    }
+
+    // Одна битва с номером trial. Отдельно - чтобы её можно было переиграть вручную
+    static BattleOutcome runTrial(Army playerArmy, Army computerArmy, long seed, long trial) throws InterruptedException {
+        RandomSource random = RandomSource.seeded(trialSeed(seed, trial));
+        SimulateBattleImpl simulator = new SimulateBattleImpl();
+        simulator.setHeadless(true);
+        simulator.setRandom(random);
+        simulator.setAttackResolver(new ModelAttackResolver());
+        return simulator.simulateBattle(copy(playerArmy), copy(computerArmy));
+    }
+
+    // Глубокая копия армии: новые бойцы с теми же характеристиками, здоровьем, позицией и состоянием.
+    // Бонусы общие с оригиналом - они только читаются
+    static Army copy(Army army) {
+        List<Unit> units = new ArrayList<>(army.getUnits().size());
+        for (Unit unit : army.getUnits()) {
+            Unit copy = new Unit(
+                    unit.getName(),
+                    unit.getUnitType(),
+                    unit.getHealth(),
+                    unit.getBaseAttack(),
+                    unit.getCost(),
+                    unit.getAttackType(),
+                    unit.getAttackBonuses(),
+                    unit.getDefenceBonuses(),
+                    unit.getxCoordinate(),
+                    unit.getyCoordinate()
+            );
+            copy.setAlive(unit.isAlive());
+            units.add(copy);
+        }
+        Army copy = new Army();
+        copy.setUnits(units);
+        return copy;
+    }
+
+    // Армия для игры за игрока. Генерация ставит армию в первые колонки поля, как армию компьютера, а игроку нужен противоположный край.
+    // Армия в зоне игрока возвращается копией как есть, армия в зоне компьютера - отражённой по горизонтали копией.
+    // Армию, которая не укладывается ни в одну из зон, поставить против другой нельзя: бойцы сторон делили бы ячейки
+    static Army asPlayer(Army army) {
+        BattlefieldGeometry geometry = BattlefieldGeometry.DEFAULT;
+        int width = geometry.getWidth();
+        int columns = geometry.getDeployColumns();
+        boolean computerZone = true;
+        boolean playerZone = true;
+        for (Unit unit : army.getUnits()) {
+            int x = unit.getxCoordinate();
+            computerZone &= x >= 0 && x < columns;
+            playerZone &= x >= width - columns && x < width;
+        }
+        if (!computerZone && !playerZone) {
+            throw new IllegalArgumentException("Армия стоит вне зон развёртывания, играть ею за игрока нельзя");
+        }
+
+        Army copy = copy(army);
+        if (!playerZone) {
+            for (Unit unit : copy.getUnits()) {
+                unit.setxCoordinate(width - 1 - unit.getxCoordinate());
+            }
+        }
+        return copy;
+    }
+
+    // Зерно битвы: перемешиваем общее зерно с номером битвы (финализатор SplitMix64)
+    static long trialSeed(long seed, long trial) {
+        long z = seed + (trial + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Задача на диапазон битв [from, to): большой диапазон делится пополам, маленький прогоняется подряд
+    private static final class Trials extends RecursiveTask<MonteCarloResult> {
+        private final Army playerArmy;
+        private final Army computerArmy;
+        private final long seed;
+        private final int from;
+        private final int to;
+
+        Trials(Army playerArmy, Army computerArmy, long seed, int from, int to) {
+            this.playerArmy = playerArmy;
+            this.computerArmy = computerArmy;
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected MonteCarloResult compute() {
+            if (to - from > TRIALS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                Trials left = new Trials(playerArmy, computerArmy, seed, from, middle);
+                left.fork();
+                MonteCarloResult right = new Trials(playerArmy, computerArmy, seed, middle, to).compute();
+                return left.join().merge(right);
+            }
+
+            MonteCarloResult result = new MonteCarloResult(0, 0, 0, 0, 0);
+            for (int trial = from; trial < to; trial++) {
+                try {
+                    result = result.merge(MonteCarloResult.of(runTrial(playerArmy, computerArmy, seed, trial)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Прогон битв прерван", e);
+                }
+            }
+            return result;
+        }
+    }
+}
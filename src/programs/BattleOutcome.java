@@ -0,0 +1,61 @@
+package programs;
+
+// Итог битвы в структурированном виде: кто победил, сколько длилась битва, кто выжил и сколько здоровья потеряла каждая сторона
+public class BattleOutcome {
+
+    public enum Winner {
+        PLAYER,
+        COMPUTER,
+        DRAW
+    }
+
+    private final Winner winner;
+    private final int rounds;
+    private final int playerSurvivors;
+    private final int computerSurvivors;
+    private final long playerDamageTaken;
+    private final long computerDamageTaken;
+
+    public BattleOutcome(Winner winner, int rounds, int playerSurvivors, int computerSurvivors,
+                         long playerDamageTaken, long computerDamageTaken) {
+        this.winner = winner;
+        this.rounds = rounds;
+        this.playerSurvivors = playerSurvivors;
+        this.computerSurvivors = computerSurvivors;
+        this.playerDamageTaken = playerDamageTaken;
+        this.computerDamageTaken = computerDamageTaken;
+    }
+
+    public Winner getWinner() {
+        return winner;
+    }
+
+    public int getRounds() {
+        return rounds;
+    }
+
+    public int getPlayerSurvivors() {
+        return playerSurvivors;
+    }
+
+    public int getComputerSurvivors() {
+        return computerSurvivors;
+    }
+
+    // Урон, полученный армией игрока, он же нанесённый компьютером
+    public long getPlayerDamageTaken() {
+        return playerDamageTaken;
+    }
+
+    // Урон, полученный армией компьютера, он же нанесённый игроком
+    public long getComputerDamageTaken() {
+        return computerDamageTaken;
+    }
+
+    @Override
+    public String toString() {
+        return "BattleOutcome{winner=" + winner + ", rounds=" + rounds +
+                ", playerSurvivors=" + playerSurvivors + ", computerSurvivors=" + computerSurvivors +
+                ", playerDamageTaken=" + playerDamageTaken + ", computerDamageTaken=" + computerDamageTaken + "}";
+    }
+}
@@ -0,0 +1,150 @@
+package programs;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static programs.BattleReplayWriter.*;
+
+// Чтение записей битв, сделанных BattleReplayWriter. Файл отображается в память только для чтения окнами по 1 ГБ,
+// события читаются прямо из неё, без копирования и без создания объектов на каждое событие: читатель - это курсор,
+// поля текущего события берутся методами type(), unit(), round(), a(), b().
+// Записи выровнены по 16 байт, а окна кратны 16, поэтому ни одна запись не ложится на границу окон, и файл любого размера
+// читается так же, как маленький. Переход к любой битве и столкновению - двоичный поиск по индексу
+public class BattleReplayReader implements AutoCloseable {
+    // Размер окна отображения - 2^WINDOW_BITS байт
+    private static final int WINDOW_BITS = 30;
+    private static final long WINDOW_MASK = (1L << WINDOW_BITS) - 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] windows;
+    private final long events;
+    private final long indexOffset;
+    private final int indexSize;
+    private final int battles;
+
+    // Смещение текущего события; до первого next() - перед первым событием
+    private long current = -1;
+    private long next = HEADER_SIZE;
+
+    public BattleReplayReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Неподдерживаемый размер файла записи битв: " + size);
+            }
+            this.windows = new MappedByteBuffer[(int) ((size + WINDOW_MASK) >>> WINDOW_BITS)];
+            for (int i = 0; i < windows.length; i++) {
+                long offset = (long) i << WINDOW_BITS;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size - offset, WINDOW_MASK + 1));
+                windows[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            if (getInt(0) != MAGIC || getInt(4) != VERSION) {
+                throw new IOException("Файл не является записью битв или записан другой версией формата");
+            }
+            this.events = getLong(8);
+            this.indexOffset = getLong(16);
+            this.battles = getInt(24);
+            this.indexSize = getInt(28);
+            if (indexOffset < HEADER_SIZE || indexOffset % INDEX_ENTRY_SIZE != 0 || indexSize < 0
+                    || indexOffset + (long) indexSize * INDEX_ENTRY_SIZE > size) {
+                throw new IOException("Повреждён индекс записи битв");
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public int getBattles() {
+        return battles;
+    }
+
+    // Переходим к началу файла
+    public void rewind() {
+        current = -1;
+        next = HEADER_SIZE;
+    }
+
+    // Переходим к столкновению round битвы battle: следующий next() вернёт его событие ROUND. false - если такого нет
+    public boolean seek(int battle, int round) {
+        int low = 0;
+        int high = indexSize - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long at = indexOffset + (long) middle * INDEX_ENTRY_SIZE;
+            int compare = battle != getInt(at) ? Integer.compare(getInt(at), battle)
+                    : Integer.compare(getInt(at + 4), round);
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                current = -1;
+                next = getLong(at + 8);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Следующее событие. false - если события закончились
+    public boolean next() {
+        if (next + EVENT_SIZE > indexOffset) {
+            return false;
+        }
+        current = next;
+        next += EVENT_SIZE;
+        return true;
+    }
+
+    public byte type() {
+        return window(current).get(at(current));
+    }
+
+    public int unit() {
+        return Short.toUnsignedInt(window(current).getShort(at(current) + 2));
+    }
+
+    public int round() {
+        return getInt(current + 4);
+    }
+
+    public int a() {
+        return getInt(current + 8);
+    }
+
+    public int b() {
+        return getInt(current + 12);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Поле записи по смещению в файле. Поле не выходит за пределы своей 16-байтной записи, а значит, и своего окна
+    private int getInt(long offset) {
+        return window(offset).getInt(at(offset));
+    }
+
+    private long getLong(long offset) {
+        return window(offset).getLong(at(offset));
+    }
+
+    private MappedByteBuffer window(long offset) {
+        return windows[(int) (offset >>> WINDOW_BITS)];
+    }
+
+    private static int at(long offset) {
+        return (int) (offset & WINDOW_MASK);
+    }
+}
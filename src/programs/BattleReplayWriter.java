@@ -0,0 +1,167 @@
+package programs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Запись битв в компактный двоичный формат для разбора спорных ситуаций. Файл отображается в память кусками,
+// события фиксированной длины пишутся прямо в отображённую память, без промежуточных буферов и системных вызовов на каждое событие.
+// В одном файле может лежать сколько угодно битв подряд. При закрытии в конец дописывается индекс начала столкновений,
+// по которому читатель сразу переходит к нужной битве и столкновению.
+//
+// Формат (порядок байт - little endian):
+//   заголовок, 32 байта: магическое число, версия, число событий, смещение индекса, число битв, число записей индекса
+//   события, по 16 байт: тип (1 байт), резерв (1), боец (2, без знака), номер столкновения (4), a (4), b (4)
+//     BATTLE - начало битвы: a - номер битвы в файле, b - число бойцов
+//     ROUND  - начало столкновения
+//     ATTACK - удар: боец - атакующий, a - цель (-1, если удар не нашёл цели), b - изменение здоровья цели
+//     MOVE   - перемещение бойца: a, b - координаты клетки, в которой он оказался
+//     DEATH  - гибель бойца
+//   индекс, по 16 байт на столкновение: номер битвы (4), номер столкновения (4), смещение события ROUND (8)
+// Все записи по 16 байт, и заголовок кратен 16, поэтому любая запись лежит по смещению, кратному 16. Размер файла ничем не ограничен
+// Писатель однопоточный: одна битва пишется одним потоком
+public class BattleReplayWriter implements AutoCloseable {
+    public static final int MAGIC = 0x504D5248; // "HRMP"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 32;
+    public static final int EVENT_SIZE = 16;
+    public static final int INDEX_ENTRY_SIZE = 16;
+
+    public static final byte BATTLE = 0;
+    public static final byte ROUND = 1;
+    public static final byte ATTACK = 2;
+    public static final byte MOVE = 3;
+    public static final byte DEATH = 4;
+
+    // Номер бойца занимает в событии два байта без знака, поэтому в записываемой битве не больше 65536 бойцов
+    public static final int MAX_UNITS = 1 << 16;
+
+    // Размер отображаемого куска файла
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private MappedByteBuffer chunk;
+    private long chunkOffset;
+    private long position = HEADER_SIZE;
+    private long events;
+
+    private int battles;
+    private int round;
+
+    // Индекс столкновений копится в памяти и пишется при закрытии
+    private int[] indexBattles = new int[1024];
+    private int[] indexRounds = new int[1024];
+    private long[] indexOffsets = new long[1024];
+    private int indexSize;
+
+    public BattleReplayWriter(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(0);
+    }
+
+    // Начало новой битвы. Возвращает её номер в файле
+    public int beginBattle(int units) {
+        if (units < 0 || units > MAX_UNITS) {
+            throw new IllegalArgumentException("В записи битвы помещается не больше " + MAX_UNITS + " бойцов, а в битве их " + units);
+        }
+        round = 0;
+        write(BATTLE, 0, battles, units);
+        return battles++;
+    }
+
+    public void round(int round) {
+        this.round = round;
+        if (indexSize == indexOffsets.length) {
+            indexBattles = Arrays.copyOf(indexBattles, indexSize * 2);
+            indexRounds = Arrays.copyOf(indexRounds, indexSize * 2);
+            indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+        }
+        indexBattles[indexSize] = battles - 1;
+        indexRounds[indexSize] = round;
+        indexOffsets[indexSize] = position;
+        indexSize++;
+        write(ROUND, 0, 0, 0);
+    }
+
+    public void attack(int attacker, int target, int hpDelta) {
+        write(ATTACK, attacker, target, hpDelta);
+    }
+
+    public void move(int unit, int x, int y) {
+        write(MOVE, unit, x, y);
+    }
+
+    public void death(int unit) {
+        write(DEATH, unit, 0, 0);
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    // Дописываем индекс и заголовок. Файл не обрезаем: пока куски отображены, Windows не даёт менять размер файла, а снять отображение
+    // в Java нельзя. Хвост последнего куска остаётся нулями, читатель берёт размер индекса из заголовка, а не из размера файла
+    @Override
+    public void close() throws IOException {
+        try {
+            long indexOffset = position;
+            for (int i = 0; i < indexSize; i++) {
+                ensure(INDEX_ENTRY_SIZE);
+                int at = (int) (position - chunkOffset);
+                chunk.putInt(at, indexBattles[i]);
+                chunk.putInt(at + 4, indexRounds[i]);
+                chunk.putLong(at + 8, indexOffsets[i]);
+                position += INDEX_ENTRY_SIZE;
+            }
+            chunk.force();
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putLong(8, events);
+            header.putLong(16, indexOffset);
+            header.putInt(24, battles);
+            header.putInt(28, indexSize);
+            header.force();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void write(byte type, int unit, int a, int b) {
+        ensure(EVENT_SIZE);
+        int at = (int) (position - chunkOffset);
+        chunk.put(at, type);
+        chunk.put(at + 1, (byte) 0);
+        chunk.putShort(at + 2, (short) unit);
+        chunk.putInt(at + 4, round);
+        chunk.putInt(at + 8, a);
+        chunk.putInt(at + 12, b);
+        position += EVENT_SIZE;
+        events++;
+    }
+
+    // Если в текущем куске не осталось места, отображаем следующий, начиная с текущей позиции
+    private void ensure(int bytes) {
+        if (position + bytes > chunkOffset + CHUNK_SIZE) {
+            try {
+                map(position);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void map(long offset) throws IOException {
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, offset, CHUNK_SIZE);
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+        chunkOffset = offset;
+    }
+}
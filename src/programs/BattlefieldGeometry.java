@@ -0,0 +1,67 @@
+package programs;
+
+// Геометрия игрового поля: размеры, ширина зоны развёртывания армии в колонках и способ поиска пути.
+// По умолчанию - поле игры 27x21 с тремя колонками на армию и обычным A*. Для больших карт (например, 200x150 с сотнями бойцов)
+// геометрию задают генератору, симулятору, поиску пути и выбору целей, а внутри битвы все программы берут её из контекста битвы
+public final class BattlefieldGeometry {
+
+    // Поиск пути: A* по всем ячейкам или поиск точек прыжка (JPS), который пробегает открытые участки поля, не кладя их в кучу
+    public enum PathStrategy {
+        A_STAR,
+        JUMP_POINT
+    }
+
+    // Начиная с какого числа ячеек поле считается большим и по умолчанию ищем путь прыжками
+    private static final int LARGE_FIELD = 4096;
+
+    public static final BattlefieldGeometry DEFAULT = new BattlefieldGeometry(27, 21, 3, PathStrategy.A_STAR);
+
+    private final int width;
+    private final int height;
+    private final int deployColumns;
+    private final PathStrategy pathStrategy;
+
+    // Движок поиска пути под размер поля, общий для всех, кто пользуется этой геометрией
+    private final GridPathEngine engine;
+
+    public BattlefieldGeometry(int width, int height) {
+        this(width, height, 3, width * height >= LARGE_FIELD ? PathStrategy.JUMP_POINT : PathStrategy.A_STAR);
+    }
+
+    // Зоны расстановки игрока и компьютера лежат у противоположных краёв и не должны пересекаться: 2 * deployColumns <= width
+    public BattlefieldGeometry(int width, int height, int deployColumns, PathStrategy pathStrategy) {
+        if (width <= 0 || height <= 0 || deployColumns <= 0 || deployColumns > width - deployColumns) {
+            throw new IllegalArgumentException("Недопустимая геометрия поля: " + width + "x" + height + ", колонок " + deployColumns);
+        }
+        this.width = width;
+        this.height = height;
+        this.deployColumns = deployColumns;
+        this.pathStrategy = pathStrategy;
+        this.engine = new GridPathEngine(width, height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDeployColumns() {
+        return deployColumns;
+    }
+
+    public PathStrategy getPathStrategy() {
+        return pathStrategy;
+    }
+
+    GridPathEngine engine() {
+        return engine;
+    }
+
+    @Override
+    public String toString() {
+        return "BattlefieldGeometry{" + width + "x" + height + ", deployColumns=" + deployColumns + ", " + pathStrategy + "}";
+    }
+}
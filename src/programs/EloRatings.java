@@ -0,0 +1,78 @@
+package programs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+// Рейтинг Эло армий турнира, пересчитывается после каждой битвы. Победа - 1 очко, ничья - половина.
+// Итоги турнир подаёт в фиксированном порядке, поэтому и рейтинг не зависит ни от числа потоков, ни от того, с какой точки турнир продолжен
+public class EloRatings implements TournamentAggregator {
+    public static final double INITIAL_RATING = 1500;
+    public static final double DEFAULT_K = 16;
+
+    private final double k;
+    private final double[] ratings;
+
+    public EloRatings(int armies) {
+        this(armies, DEFAULT_K);
+    }
+
+    public EloRatings(int armies, double k) {
+        this.k = k;
+        this.ratings = new double[armies];
+        Arrays.fill(ratings, INITIAL_RATING);
+    }
+
+    @Override
+    public void accept(int player, int computer, BattleOutcome outcome) {
+        double score = outcome.getWinner() == BattleOutcome.Winner.PLAYER ? 1
+                : outcome.getWinner() == BattleOutcome.Winner.DRAW ? 0.5 : 0;
+        double expected = 1 / (1 + Math.pow(10, (ratings[computer] - ratings[player]) / 400));
+        double delta = k * (score - expected);
+        ratings[player] += delta;
+        ratings[computer] -= delta;
+    }
+
+    public double getRating(int army) {
+        return ratings[army];
+    }
+
+    public double[] getRatings() {
+        return ratings.clone();
+    }
+
+    // Номера армий от самого высокого рейтинга к самому низкому
+    public int[] getRanking() {
+        Integer[] order = new Integer[ratings.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble((Integer i) -> ratings[i]).reversed());
+        int[] ranking = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            ranking[i] = order[i];
+        }
+        return ranking;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(ratings.length);
+        for (double rating : ratings) {
+            out.writeDouble(rating);
+        }
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        int armies = in.readInt();
+        if (armies != ratings.length) {
+            throw new IOException("В контрольной точке рейтинг " + armies + " армий, а в турнире их " + ratings.length);
+        }
+        for (int i = 0; i < armies; i++) {
+            ratings[i] = in.readDouble();
+        }
+    }
+}
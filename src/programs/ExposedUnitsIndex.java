@@ -0,0 +1,178 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.*;
+
+// Индекс открытых для атаки бойцов одной армии. Набор целей меняется только тогда, когда гибнет кто-то из передних,
+// поэтому вместо пересчёта на каждый удар индекс поддерживается по событиям: гибель бойца обновляет его строку за O(1),
+// а запрос целей возвращает готовое представление только для чтения.
+// Индекс держит оба направления атаки сразу: для хода игрока фронт - последняя колонка, для хода компьютера - первая.
+// Бойцы в индексе - номера в битве, а строка и жизнь бойца читаются из состояния битвы ArmyState, не из Unit
+final class ExposedUnitsIndex {
+    private final BattleContext context;
+    private final ArmyState state;
+    private final int columns; // Колонок в расстановке армии
+    private final int rows; // Высота игрового поля, она же число строк в колонке
+
+    // Номера живых бойцов по ячейкам расстановки: индекс row * columns + column, -1 - ячейка пуста
+    private final int[] slots;
+
+    // Номера открытых бойцов для каждого направления, плотным массивом, и позиция открытого бойца строки в этом массиве
+    private final int[][] exposed;
+    private final int[][] position;
+    private final int[] count = new int[2];
+    // Представления оборачиваются один раз на индекс, запрос целей ничего не выделяет
+    private final List<Unit> humanView = Collections.unmodifiableList(new View(1));
+    private final List<Unit> computerView = Collections.unmodifiableList(new View(0));
+
+    // Индекс устарел: бойцы армии перемещались, и колонки могли поменяться
+    private boolean stale;
+
+    private ExposedUnitsIndex(BattleContext context, int columns, int rows) {
+        this.context = context;
+        this.state = context.state();
+        this.columns = columns;
+        this.rows = rows;
+        this.slots = new int[rows * columns];
+        this.exposed = new int[2][rows];
+        this.position = new int[2][rows];
+        Arrays.fill(slots, -1);
+        Arrays.fill(position[0], -1);
+        Arrays.fill(position[1], -1);
+    }
+
+    // Строим индекс по колонкам армии в том виде, в каком их отдаёт игра, для поля из rows строк. Если расстановка нестандартная
+    // (нет колонок, боец не из этой битвы, боец вне поля или двое в одной ячейке), индекс не строится и цели считаются как обычно
+    static ExposedUnitsIndex build(BattleContext context, List<List<Unit>> unitsByColumn, int rows) {
+        if (unitsByColumn.isEmpty()) {
+            return null;
+        }
+        int columns = unitsByColumn.size();
+        ExposedUnitsIndex index = new ExposedUnitsIndex(context, columns, rows);
+        ArmyState state = context.state();
+        for (int column = 0; column < columns; column++) {
+            for (Unit unit : unitsByColumn.get(column)) {
+                int id = context.idOf(unit);
+                if (id < 0) {
+                    return null;
+                }
+                if (!state.isAlive(id)) {
+                    continue;
+                }
+                int row = state.y[id];
+                if (row < 0 || row >= rows || index.slots[row * columns + column] >= 0) {
+                    return null;
+                }
+                index.slots[row * columns + column] = id;
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            index.expose(0, row, index.front(0, row, 0));
+            index.expose(1, row, index.front(1, row, 0));
+        }
+        return index;
+    }
+
+    // Открытые бойцы для заданного направления атаки. Представление живое и только для чтения
+    List<Unit> view(boolean humanAttack) {
+        return humanAttack ? humanView : computerView;
+    }
+
+    // Боец с номером id погиб - если он был открыт, его место в строке занимает следующий за ним живой боец.
+    // Не больше проверок, чем колонок
+    void onUnitDied(int id) {
+        int row = state.y[id];
+        if (row < 0 || row >= rows) {
+            return;
+        }
+        for (int column = 0; column < columns; column++) {
+            if (slots[row * columns + column] == id) {
+                slots[row * columns + column] = -1;
+                for (int direction = 0; direction < 2; direction++) {
+                    if (position[direction][row] >= 0 && exposed[direction][position[direction][row]] == id) {
+                        hide(direction, row);
+                        expose(direction, row, front(direction, row, depth(direction, column) + 1));
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    boolean isStale() {
+        return stale;
+    }
+
+    void markStale() {
+        stale = true;
+    }
+
+    // Проверка согласованности с прямым пересчётом целей, для проверок. Порядок бойцов в индексе свой, поэтому сравниваем как множества
+    boolean isConsistentWith(List<List<Unit>> unitsByColumn, boolean humanAttack) {
+        List<Unit> expected = new ArrayList<>();
+        new SuitableForAttackUnitsFinderImpl().getSuitableUnits(unitsByColumn, humanAttack, expected);
+        List<Unit> actual = view(humanAttack);
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        Set<Unit> actualSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        actualSet.addAll(actual);
+        return actualSet.containsAll(expected);
+    }
+
+    // Глубина колонки для направления: 0 - фронт. Для хода игрока (direction = 1) фронт - последняя колонка, для хода компьютера - первая
+    private int depth(int direction, int column) {
+        return direction == 1 ? columns - 1 - column : column;
+    }
+
+    // Номер первого живого бойца строки, начиная с глубины from и дальше в тыл, или -1
+    private int front(int direction, int row, int from) {
+        for (int d = from; d < columns; d++) {
+            int id = slots[row * columns + depth(direction, d)];
+            if (id >= 0) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private void expose(int direction, int row, int id) {
+        if (id < 0) {
+            return;
+        }
+        position[direction][row] = count[direction];
+        exposed[direction][count[direction]++] = id;
+    }
+
+    // Убираем открытого бойца строки из плотного массива, переставляя на его место последнего
+    private void hide(int direction, int row) {
+        int at = position[direction][row];
+        int last = --count[direction];
+        int moved = exposed[direction][last];
+        exposed[direction][at] = moved;
+        exposed[direction][last] = -1;
+        position[direction][state.y[moved]] = at;
+        position[direction][row] = -1;
+    }
+
+    // Представление открытых бойцов одного направления без копирования. Изменять его нельзя
+    private final class View extends AbstractList<Unit> implements RandomAccess {
+        private final int direction;
+
+        View(int direction) {
+            this.direction = direction;
+        }
+
+        @Override
+        public Unit get(int index) {
+            Objects.checkIndex(index, count[direction]);
+            return context.unit(exposed[direction][index]);
+        }
+
+        @Override
+        public int size() {
+            return count[direction];
+        }
+    }
+}
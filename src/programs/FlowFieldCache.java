@@ -0,0 +1,172 @@
+package programs;
+
+import com.battle.heroes.army.programs.Edge;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Кеш полей расстояний до целей. Под конец битвы много бойцов идут к одним и тем же выжившим, и каждый заново гонял поиск пути.
+// Здесь на каждую популярную цель один раз считается поле расстояний, а дальше любой атакующий спускается по нему за O(длина пути).
+// К слоту приложены ячейка цели и версия карты, на которой посчитано поле. Каждый шаг бойца меняет версию, поэтому поле
+// старой версии не выбрасывается сразу: путь по нему отдаётся, если он всё ещё кратчайший на нынешней карте (см. stillShortest).
+// Слотов фиксированное число, всё состояние - в примитивных массивах, а массивы расстояний заводятся по одному на слот и потом
+// переиспользуются, так что запрос к кешу ничего не выделяет (кроме самого пути). Искать цель перебором по 16 слотам дешевле хеша.
+// Вытесняется сначала пустой слот, затем устаревший (посчитанный на старой версии карты), затем давно не нужный
+final class FlowFieldCache {
+    // Сколько полей держим одновременно
+    static final int DEFAULT_CAPACITY = 16;
+
+    // Поле строится со второго запроса к цели на одной и той же версии карты: на единичный запрос дешевле обычный A*
+    private static final int BUILD_THRESHOLD = 2;
+
+    // Больше освобождённых с версии поля ячеек не разбираем - дешевле пересчитать поле
+    private static final int MAX_FREED = OccupancyGrid.FREED_LOG;
+
+    private final GridPathEngine engine;
+    private final OccupancyGrid grid;
+
+    // Слоты: ячейка цели (-1 - слот пуст), версия карты, число запросов на этой версии, готово ли поле, момент последнего запроса и само поле
+    private final int[] targets;
+    private final long[] versions;
+    private final int[] requests;
+    private final boolean[] ready;
+    private final long[] used;
+    private final int[][] distances;
+    private long clock;
+
+    // Рабочие массивы проверки старого поля: освобождённые ячейки, нижние оценки их расстояний до цели и разобранные из них
+    private final int[] freed = new int[MAX_FREED];
+    private final long[] bounds = new long[MAX_FREED];
+    private final boolean[] settled = new boolean[MAX_FREED];
+
+    FlowFieldCache(GridPathEngine engine, OccupancyGrid grid, int capacity) {
+        this.engine = engine;
+        this.grid = grid;
+        this.targets = new int[capacity];
+        this.versions = new long[capacity];
+        this.requests = new int[capacity];
+        this.ready = new boolean[capacity];
+        this.used = new long[capacity];
+        this.distances = new int[capacity][];
+        Arrays.fill(targets, -1);
+    }
+
+    // Путь от источника до цели по полю, либо null, если поля для цели пока нет и лучше обойтись обычным поиском
+    List<Edge> findPath(int sourceX, int sourceY, int targetX, int targetY) {
+        int target = engine.cell(targetX, targetY);
+        long version = grid.version();
+        int slot = slot(target, version);
+        used[slot] = ++clock;
+
+        // Карта изменилась, но поле готово: если путь по нему всё ещё кратчайший, отдаём его, иначе сразу пересчитываем поле -
+        // к этой цели уже ходили
+        if (versions[slot] != version && ready[slot]) {
+            List<Edge> path = engine.followField(sourceX, sourceY, targetX, targetY, distances[slot]);
+            if (!stillShortest(path, target, versions[slot], distances[slot])) {
+                engine.fillDistanceField(targetX, targetY, grid.bits(), distances[slot]);
+                versions[slot] = version;
+                path = engine.followField(sourceX, sourceY, targetX, targetY, distances[slot]);
+            }
+            if (BattleMetrics.ENABLED) {
+                BattleMetrics.onFlowField(true);
+            }
+            return path;
+        }
+
+        // Поля нет - начинаем считать запросы на этой версии карты заново
+        if (versions[slot] != version) {
+            versions[slot] = version;
+            requests[slot] = 0;
+            ready[slot] = false;
+        }
+        if (!ready[slot] && ++requests[slot] < BUILD_THRESHOLD) {
+            if (BattleMetrics.ENABLED) {
+                BattleMetrics.onFlowField(false);
+            }
+            return null;
+        }
+        if (!ready[slot]) {
+            if (distances[slot] == null) {
+                distances[slot] = new int[engine.size()];
+            }
+            engine.fillDistanceField(targetX, targetY, grid.bits(), distances[slot]);
+            ready[slot] = true;
+        }
+        if (BattleMetrics.ENABLED) {
+            BattleMetrics.onFlowField(true);
+        }
+        return engine.followField(sourceX, sourceY, targetX, targetY, distances[slot]);
+    }
+
+    // Слот цели. Если цели в кеше нет, отдаём ей слот-жертву
+    private int slot(int target, long version) {
+        int victim = 0;
+        int victimRank = Integer.MAX_VALUE;
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i] == target) {
+                return i;
+            }
+            // Чем меньше ранг, тем охотнее вытесняем: пустой, устаревший, живой
+            int rank = targets[i] < 0 ? 0 : versions[i] != version ? 1 : 2;
+            if (rank < victimRank || rank == victimRank && used[i] < used[victim]) {
+                victim = i;
+                victimRank = rank;
+            }
+        }
+        targets[victim] = target;
+        versions[victim] = -1;
+        ready[victim] = false;
+        return victim;
+    }
+
+    // Остаётся ли путь по полю, посчитанному на версии карты fieldVersion, кратчайшим на нынешней карте.
+    // Занятые с тех пор ячейки только удлиняют пути, поэтому достаточно, чтобы их не было на самом пути. Освобождённые могут
+    // открыть путь короче, и каждую такую ячейку F оцениваем снизу: до неё от источника не ближе октильного расстояния,
+    // а от неё до цели - не ближе шага к соседу по старому полю или октильного прыжка к другой освобождённой ячейке с её оценкой
+    // (Дейкстра по освобождённым ячейкам). Если ни через одну из них не выходит короче пути по полю, путь по-прежнему кратчайший
+    private boolean stillShortest(List<Edge> path, int target, long fieldVersion, int[] field) {
+        if (path.size() < 2) {
+            return false;
+        }
+        for (int i = 1; i < path.size() - 1; i++) {
+            if (grid.isBlocked(path.get(i).getX(), path.get(i).getY())) {
+                return false;
+            }
+        }
+        int count = grid.freedSince(fieldVersion, freed);
+        if (count < 0) {
+            return false;
+        }
+        int source = engine.cell(path.get(0).getX(), path.get(0).getY());
+        long length = engine.stepDistance(source, field);
+
+        // Начальные оценки - шаг к соседу по старому полю. Концы пути не в счёт: через них путь не проходит
+        for (int i = 0; i < count; i++) {
+            boolean end = freed[i] == source || freed[i] == target;
+            int step = engine.stepDistance(freed[i], field);
+            bounds[i] = end ? Long.MAX_VALUE : step == GridPathEngine.UNREACHABLE ? Long.MAX_VALUE : step;
+            settled[i] = end;
+        }
+        for (int round = 0; round < count; round++) {
+            int next = -1;
+            for (int i = 0; i < count; i++) {
+                if (!settled[i] && (next < 0 || bounds[i] < bounds[next])) {
+                    next = i;
+                }
+            }
+            if (next < 0 || bounds[next] == Long.MAX_VALUE) {
+                break;
+            }
+            settled[next] = true;
+            if (engine.heuristic(source, freed[next]) + bounds[next] < length) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                if (!settled[i]) {
+                    bounds[i] = Math.min(bounds[i], engine.heuristic(freed[i], freed[next]) + bounds[next]);
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,42 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Способ расстановки подразделения в зоне развёртывания из columns колонок по rows строк.
+// Каждому бойцу выдаётся ячейка с номером column * rows + row, либо -1, если места ему не хватило.
+// Колонка с наибольшим номером - фронтовая, ближайшая к противнику
+public interface Formation {
+
+    void arrange(List<Unit> squad, int columns, int rows, RandomSource random, int[] cells);
+
+    // Случайная расстановка: ячейки из лениво перетасованного пула свободных, см. RandomFormation
+    Formation RANDOM = new RandomFormation();
+
+    // Детерминированный строй: самые сильные в атаке - во фронтовую колонку, от центра к флангам, следующие - во вторую линию и так далее
+    Formation STRONGEST_FRONT = (squad, columns, rows, random, cells) -> {
+        List<Integer> order = new ArrayList<>(squad.size());
+        for (int i = 0; i < squad.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingInt((Integer i) -> squad.get(i).getBaseAttack()).reversed());
+
+        int place = 0;
+        for (int i : order) {
+            if (place >= columns * rows) {
+                cells[i] = -1;
+                continue;
+            }
+            int column = columns - 1 - place / rows;
+
+            // Строки от центра: середина, выше, ниже, ещё выше...
+            int k = place % rows;
+            int row = rows / 2 + ((k & 1) == 0 ? k / 2 : -(k / 2 + 1));
+            cells[i] = column * rows + row;
+            place++;
+        }
+    };
+}
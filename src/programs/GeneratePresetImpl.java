@@ -6,22 +6,81 @@ import com.battle.heroes.army.programs.GeneratePreset;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
 
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class GeneratePresetImpl implements GeneratePreset {
-    final int MAX_UNITS_IN_SQUAD = 11;
+    static final int MAX_UNITS_IN_SQUAD = 11;
 
-    // Класс обёртка штатной единицы, будет участвовать во всех расчётах, во время расстановки превратится в Unit
+    // Способы формирования подразделения: "хапуга" или точное решение задачи о рюкзаке
+    public enum Method {
+        SIMPLE,
+        KNAPSACK
+    }
+
+    // Что именно максимизируем при точном формировании. По умолчанию - суммарный опыт, как и у "хапуги"
+    private static final ToIntFunction<Unit> EXPERIENCE = unit -> (unit.getBaseAttack() + unit.getHealth()) / 2;
+
+    // Общий для всех экземпляров кеш составов: подбор по одному и тому же каталогу и бюджету считается один раз
+    private static final PresetCache CACHE = new PresetCache(256);
+
+    private Method method = Method.SIMPLE;
+    private ToIntFunction<Unit> objective = EXPERIENCE;
+
+    // Расстановка: по умолчанию случайная, генератор можно засеять, чтобы расстановка повторялась
+    private Formation formation = Formation.RANDOM;
+    private RandomSource random = RandomSource.threadLocal();
+
+    // Режим без вывода состава в консоль, для массовой генерации
+    private boolean headless;
+
+    // Геометрия поля: зона развёртывания - первые getDeployColumns() колонок во всю высоту поля
+    private BattlefieldGeometry geometry = BattlefieldGeometry.DEFAULT;
+
+    public void setMethod(Method method) {
+        this.method = method;
+    }
+
+    public void setObjective(ToIntFunction<Unit> objective) {
+        this.objective = objective;
+    }
+
+    public void setFormation(Formation formation) {
+        this.formation = formation;
+    }
+
+    public void setSeed(long seed) {
+        this.random = RandomSource.seeded(seed);
+    }
+
+    public void setRandom(RandomSource random) {
+        this.random = random;
+    }
+
+    public void setHeadless(boolean headless) {
+        this.headless = headless;
+    }
+
+    public void setGeometry(BattlefieldGeometry geometry) {
+        this.geometry = geometry;
+    }
+
+    public static PresetCache getCache() {
+        return CACHE;
+    }
+
+    // Класс обёртка штатной единицы, будет участвовать во всех расчётах, во время расстановки превратится в Unit.
+    // Опыт - ценность бойца по той цели (objective), под которую подбирался состав
     static class Rookie {
         private final Unit unit;
         private final int experience;
 
-        public Rookie(Unit unit) {
+        public Rookie(Unit unit, int experience) {
             this.unit = unit;
-            this.experience = (unit.getBaseAttack() + unit.getHealth()) / 2;
+            this.experience = experience;
         }
 
         protected String getUnitType() {
@@ -63,31 +122,88 @@ public class GeneratePresetImpl implements GeneratePreset {
 
     @Override
     public Army generate(List<Unit> unitList, int maxPoints) {
+        long started = BattleMetrics.ENABLED ? System.nanoTime() : 0;
 
-        // Формируем штурмовое подразделение
-        List<Rookie> assaultGroup = generateSimpleMethod(unitList, maxPoints);
+        // Формируем штурмовое подразделение выбранным способом. Если такой каталог с таким бюджетом уже встречался, берём состав из кеша
+        int[] composition = CACHE.get(PresetCache.fingerprint(unitList), unitList.size(), maxPoints, method, objective,
+                () -> compose(unitList, maxPoints));
+        List<Rookie> assaultGroup = new ArrayList<>(composition.length);
+        for (int type : composition) {
+            assaultGroup.add(rookie(unitList.get(type)));
+        }
 
-        System.out.printf("На %d денег сформировано следующее подразделение:%n", maxPoints);
-        AtomicInteger budget = new AtomicInteger(maxPoints);
-        assaultGroup.forEach(unit -> {
-                    System.out.println(unit.getUnitType() + " (Атака: " + unit.getAttack() +
-                            ", Здоровье: " + unit.getHealth() +
-                            ", Стоимость: " + unit.getCost() + ", Опыт: " + unit.getExperience() + ")");
-                    budget.addAndGet(-unit.getCost());
-                }
-        );
-        System.out.println("Оставшийся бюджет: " + budget);
+        if (!headless) {
+            System.out.printf("На %d денег сформировано следующее подразделение:%n", maxPoints);
+            AtomicInteger budget = new AtomicInteger(maxPoints);
+            assaultGroup.forEach(unit -> {
+                        System.out.println(unit.getUnitType() + " (Атака: " + unit.getAttack() +
+                                ", Здоровье: " + unit.getHealth() +
+                                ", Стоимость: " + unit.getCost() + ", Опыт: " + unit.getExperience() + ")");
+                        budget.addAndGet(-unit.getCost());
+                    }
+            );
+            System.out.println("Оставшийся бюджет: " + budget);
+        }
 
+        Army army = buildArmy(assaultGroup);
+        if (BattleMetrics.ENABLED) {
+            BattleMetrics.onPreset(System.nanoTime() - started);
+        }
+        return army;
+    }
+
+    // Состав, который подобрал бы generate, в виде числа бойцов каждого типа каталога. Армия при этом не строится
+    int[] counts(List<Unit> unitList, int maxPoints) {
+        int[] counts = new int[unitList.size()];
+        for (int type : CACHE.get(PresetCache.fingerprint(unitList), unitList.size(), maxPoints, method, objective,
+                () -> compose(unitList, maxPoints))) {
+            counts[type]++;
+        }
+        return counts;
+    }
+
+    // Армия по готовому составу: counts[i] бойцов i-го типа каталога (например, состав с фронта Парето).
+    // Бойцы идут от самых ценных к менее ценным, расставляются выбранным строем, как и при обычной генерации
+    public Army deploy(List<Unit> unitList, int[] counts) {
+        Integer[] order = new Integer[unitList.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt((Integer i) -> objective.applyAsInt(unitList.get(i))).reversed());
+        List<Rookie> assaultGroup = new ArrayList<>();
+        for (int type : order) {
+            for (int i = 0; i < counts[type]; i++) {
+                assaultGroup.add(rookie(unitList.get(type)));
+            }
+        }
         return buildArmy(assaultGroup);
     }
 
+    // Подбор состава выбранным способом. Результат - номера бойцов в каталоге, в порядке их следования в подразделении
+    private int[] compose(List<Unit> unitList, int maxPoints) {
+        List<Rookie> assaultGroup = method == Method.KNAPSACK
+                ? generateKnapsackMethod(unitList, maxPoints)
+                : generateSimpleMethod(unitList, maxPoints);
+
+        Map<Unit, Integer> types = new IdentityHashMap<>();
+        for (int i = 0; i < unitList.size(); i++) {
+            types.putIfAbsent(unitList.get(i), i);
+        }
+        int[] composition = new int[assaultGroup.size()];
+        for (int i = 0; i < composition.length; i++) {
+            composition[i] = types.get(assaultGroup.get(i).unit);
+        }
+        return composition;
+    }
+
     // Реализация алгоритма "хапуга". Не очень эффективный, но быстрый. Хотя в данном конкретном случае в аккурат подходит. Принцип - хватаем как можно больше самого дорогого
     // Алгоритмическая сложность O(n log n): сортировка O(n log n), формирование O(n), память O(n), итого: O(n log n)
     //
     public List<Rookie> generateSimpleMethod(List<Unit> unitList, int maxPoints) {
 
-        // Отсортируем штатные единицы по эффективности. Лучше отсортировать типы, чем полный набор
-        unitList.sort(Comparator.comparing(unit -> {
+        // Отсортируем штатные единицы по эффективности. Лучше отсортировать типы, чем полный набор. Сортируем копию, список вызывающего не трогаем
+        List<Unit> sortedUnits = new ArrayList<>(unitList);
+        sortedUnits.sort(Comparator.comparing(unit -> {
             return (unit.getBaseAttack() + unit.getHealth()) / 2;
         }, Comparator.reverseOrder()));
 
@@ -95,47 +211,128 @@ public class GeneratePresetImpl implements GeneratePreset {
         List<Rookie> assaultGroup = new ArrayList<>();
 
         // А теперь каждой твари по... по нужному количеству единиц, как говорится, на все деньги
-        for (Unit unit : unitList) {
+        for (Unit unit : sortedUnits) {
             for (int i = 0; i < MAX_UNITS_IN_SQUAD; i++, cost -= unit.getCost()) {
                 if (cost < unit.getCost()) {
                     break;
                 }
                 // Создаём штатную единицу
-                assaultGroup.add(new Rookie(unit));
+                assaultGroup.add(rookie(unit));
+            }
+        }
+
+        return assaultGroup;
+    }
+
+    // Точное решение ограниченной задачи о рюкзаке: каждого типа не больше MAX_UNITS_IN_SQUAD, суммарная стоимость не больше maxPoints,
+    // суммарная ценность (objective) максимальна. Ограничение по количеству раскладываем двоичным разбиением (1, 2, 4, ..., остаток),
+    // после чего решаем обычный рюкзак 0/1 на одномерном массиве. Какие части взяты, запоминаем битами, чтобы потом восстановить состав.
+    // Алгоритмическая сложность O(n * log k * W), где n - число типов, k = MAX_UNITS_IN_SQUAD, W = maxPoints; память O(n * log k * W / 64)
+    public List<Rookie> generateKnapsackMethod(List<Unit> unitList, int maxPoints) {
+        int capacity = Math.max(maxPoints, 0);
+
+        // Стоимость - индекс в таблице рюкзака, отрицательная вывела бы за её пределы. Проверяем каталог до расчёта
+        for (Unit unit : unitList) {
+            if (unit.getCost() < 0) {
+                throw new IllegalArgumentException("Отрицательная стоимость бойца " + unit.getName() + ": " + unit.getCost());
+            }
+        }
+
+        // Двоичное разбиение: тип, число бойцов в части, стоимость и ценность части
+        int parts = 0;
+        int[] partType = new int[unitList.size() * 4];
+        int[] partCount = new int[partType.length];
+        for (int type = 0; type < unitList.size(); type++) {
+            Unit unit = unitList.get(type);
+            int bound = MAX_UNITS_IN_SQUAD;
+            if (unit.getCost() > 0) {
+                bound = Math.min(bound, capacity / unit.getCost());
+            }
+            for (int chunk = 1; bound > 0; chunk <<= 1) {
+                int count = Math.min(chunk, bound);
+                if (parts == partType.length) {
+                    partType = Arrays.copyOf(partType, parts * 2);
+                    partCount = Arrays.copyOf(partCount, parts * 2);
+                }
+                partType[parts] = type;
+                partCount[parts] = count;
+                parts++;
+                bound -= count;
+            }
+        }
+
+        // best[w] - наибольшая ценность при стоимости не больше w, taken[part] - взята ли часть при соответствующей стоимости
+        long[] best = new long[capacity + 1];
+        long[][] taken = new long[parts][(capacity + 64) >>> 6];
+        for (int part = 0; part < parts; part++) {
+            Unit unit = unitList.get(partType[part]);
+            int cost = unit.getCost() * partCount[part];
+            long value = (long) objective.applyAsInt(unit) * partCount[part];
+            for (int w = capacity; w >= cost; w--) {
+                long candidate = best[w - cost] + value;
+                if (candidate > best[w]) {
+                    best[w] = candidate;
+                    taken[part][w >>> 6] |= 1L << w;
+                }
             }
         }
 
+        // Восстанавливаем состав, идя по частям в обратном порядке
+        int[] counts = new int[unitList.size()];
+        int w = capacity;
+        for (int part = parts - 1; part >= 0; part--) {
+            if ((taken[part][w >>> 6] & (1L << w)) != 0) {
+                counts[partType[part]] += partCount[part];
+                w -= unitList.get(partType[part]).getCost() * partCount[part];
+            }
+        }
+
+        // Выдаём бойцов в том же порядке, что и "хапуга": от самых ценных к менее ценным
+        Integer[] order = new Integer[unitList.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt((Integer i) -> objective.applyAsInt(unitList.get(i))).reversed());
+        List<Rookie> assaultGroup = new ArrayList<>();
+        for (int type : order) {
+            for (int i = 0; i < counts[type]; i++) {
+                assaultGroup.add(rookie(unitList.get(type)));
+            }
+        }
         return assaultGroup;
     }
 
-    // Формируем армию, расставляя её по позициям
+    // Штатная единица с опытом по текущей цели подбора
+    private Rookie rookie(Unit unit) {
+        return new Rookie(unit, objective.applyAsInt(unit));
+    }
+
+    // Формируем армию, расставляя её по позициям. Ячейки выдаёт выбранный строй, каждая расстановка O(1), без повторных попыток
     private Army buildArmy(List<Rookie> assaultGroup) {
-        List<Unit> armyUnits = new ArrayList<>();
-        Map<String, Boolean> hashPositions = new HashMap<>();
+        List<Unit> squad = new ArrayList<>(assaultGroup.size());
+        for (Rookie rookie : assaultGroup) {
+            squad.add(rookie.unit);
+        }
+        int[] cells = new int[squad.size()];
+        int rows = geometry.getHeight();
+        formation.arrange(squad, geometry.getDeployColumns(), rows, random, cells);
+
+        List<Unit> armyUnits = new ArrayList<>(assaultGroup.size());
         for (int i = 0; i < assaultGroup.size(); i++) {
             Rookie rookie = assaultGroup.get(i);
-            int maxAttempt = 1000;
-            while (--maxAttempt >= 0) {
-                int xCoord = (int) (Math.random() * 3);
-                int yCoord = (int) (Math.random() * 21);
-                String hash = String.valueOf(xCoord) + yCoord;
-                if (hashPositions.containsKey(hash)) {
-                    continue;
-                }
-                armyUnits.add(rookie.toUnit(i, xCoord, yCoord));
-                hashPositions.put(hash, true);
-                break;
-            }
-            ;
 
-            // Отряд не заметил потери бойца
-            if (maxAttempt < 0) {
-                System.out.println("Не удалось найти доступные координаты для бойца подразделения " + rookie.getUnitType());
+            // Зона развёртывания не резиновая: если бойцов больше, чем ячеек, лишние остаются в резерве
+            if (cells[i] < 0) {
+                if (!headless) {
+                    System.out.println("Не удалось найти доступные координаты для бойца подразделения " + rookie.getUnitType());
+                }
+                continue;
             }
+            armyUnits.add(rookie.toUnit(i, cells[i] / rows, cells[i] % rows));
         }
 
         Army army = new Army();
         army.setUnits(armyUnits);
         return army;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,693 @@
+package programs;
+
+import com.battle.heroes.army.programs.Edge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Движок поиска пути на сетке. Вся карта хранится в плоских примитивных массивах, индекс ячейки считается как y * width + x.
+// Никаких строковых хешей, вершин и рёбер-объектов: соседи вычисляются на лету, а рабочие буферы живут в потоке и переиспользуются
+// между вызовами, так что запрос пути не выделяет память ни под что, кроме возвращаемого списка шагов
+final class GridPathEngine {
+    // Сложность шага по прямой и по диагонали. Гипотенуза по-прежнему короче двух катетов
+    static final int STRAIGHT_COST = 5;
+    static final int DIAGONAL_COST = 7;
+
+    // Отметка недостижимой ячейки в поле расстояний
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    // Смещения к восьми соседям: сначала четыре прямых, затем четыре диагональных
+    private static final int[] DX = {0, -1, 1, 0, -1, 1, -1, 1};
+    private static final int[] DY = {-1, 0, 0, 1, -1, -1, 1, 1};
+    private static final int[] COST = {
+            STRAIGHT_COST, STRAIGHT_COST, STRAIGHT_COST, STRAIGHT_COST,
+            DIAGONAL_COST, DIAGONAL_COST, DIAGONAL_COST, DIAGONAL_COST
+    };
+
+    // Номер направления по смещению: индекс (dy + 1) * 3 + (dx + 1), центр не используется
+    private static final int[] DIRECTION = {4, 0, 5, 1, -1, 2, 6, 3, 7};
+
+    private final int width;
+    private final int height;
+    private final int size;
+
+    // Рабочие буферы у каждого потока свои, чтобы движок можно было спокойно делить между потоками
+    private final ThreadLocal<Scratch> scratch;
+
+    GridPathEngine(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.size = width * height;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(size));
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int cell(int x, int y) {
+        return y * width + x;
+    }
+
+    boolean inside(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    // Сколько ячеек всего раскрыли поиски этого движка в текущем потоке. Разность до и после запроса - его стоимость в узлах
+    long expanded() {
+        return scratch.get().expanded;
+    }
+
+    // Битовая карта занятых ячеек под размер поля
+    long[] newObstacleMap() {
+        return new long[(size + 63) >>> 6];
+    }
+
+    // Рабочие буферы вызывающего в этом потоке: карта препятствий, ячейки целей и номера достигнутых целей пакетного поиска
+    long[] obstacleBuffer() {
+        return scratch.get().obstacles;
+    }
+
+    int[] targetBuffer() {
+        return scratch.get().targetCells;
+    }
+
+    int[] reachedBuffer() {
+        return scratch.get().reached;
+    }
+
+    static boolean isSet(long[] bits, int cell) {
+        return (bits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    static void set(long[] bits, int cell) {
+        bits[cell >>> 6] |= 1L << cell;
+    }
+
+    static void clear(long[] bits, int cell) {
+        bits[cell >>> 6] &= ~(1L << cell);
+    }
+
+    // Поиск кратчайшего пути алгоритмом A* с октильной эвристикой, согласованной с весами 5/7.
+    // Занятые ячейки (blocked) непроходимы, кроме целевой - до неё дойти можно. Если путь не найден, возвращается пустой список.
+    // Сложность O(n log n) в худшем случае, где n = width * height, но эвристика обычно отсекает большую часть поля
+    List<Edge> findPath(int sourceX, int sourceY, int targetX, int targetY, long[] blocked) {
+        if (!inside(sourceX, sourceY) || !inside(targetX, targetY)) {
+            return Collections.emptyList();
+        }
+
+        Scratch s = scratch.get();
+        int generation = s.nextGeneration();
+        int source = cell(sourceX, sourceY);
+        int target = cell(targetX, targetY);
+
+        s.open(source, generation, 0, -1, heuristic(sourceX, sourceY, targetX, targetY));
+        while (s.heapSize > 0) {
+
+            // Забираем самую перспективную ячейку. Эвристика согласованная, поэтому повторно в неё возвращаться не придётся
+            int current = s.poll();
+            if (current == target) {
+                return buildPath(s, target);
+            }
+            s.closed[current] = generation;
+
+            int cx = current % width;
+            int cy = current / width;
+            int currentDistance = s.distance[current];
+            for (int d = 0; d < 8; d++) {
+                int nx = cx + DX[d];
+                int ny = cy + DY[d];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                    continue;
+                }
+                int next = ny * width + nx;
+
+                // Через живых бойцов не ходим, цель - исключение
+                if (s.closed[next] == generation || (next != target && isSet(blocked, next))) {
+                    continue;
+                }
+                int distance = currentDistance + COST[d];
+                if (s.seen[next] != generation) {
+                    s.open(next, generation, distance, current, distance + heuristic(nx, ny, targetX, targetY));
+                } else if (distance < s.distance[next]) {
+                    // Нашли путь короче - уменьшаем ключ прямо в куче, без удаления и повторной вставки
+                    s.decrease(next, distance, current, distance + heuristic(nx, ny, targetX, targetY));
+                }
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    // Поиск точек прыжка (Jump Point Search) для больших полей. Ответ тот же по стоимости, что и у A*, но из ячейки идём не во всех
+    // соседей, а только в тех, куда нельзя оптимально попасть в обход неё, и бежим по прямой или диагонали до следующей
+    // "развилки" - ячейки, возле которой препятствие открывает новое направление. В кучу попадают только развилки,
+    // а на открытом поле их единицы. Пробег по прямой идёт сразу по 64 ячейки словами битовой карты: по строкам - в обычной карте,
+    // по столбцам - в транспонированной копии, которая строится в начале поиска за O(слов + занятых ячеек).
+    // Веса 5/7 сохраняют главное свойство октильной метрики - все перестановки прямых и диагональных шагов равны по стоимости,
+    // на нём отсечение и держится. Срезать угол мимо занятой ячейки можно, как и в findPath
+    List<Edge> findJumpPath(int sourceX, int sourceY, int targetX, int targetY, long[] blocked) {
+        if (!inside(sourceX, sourceY) || !inside(targetX, targetY)) {
+            return Collections.emptyList();
+        }
+
+        Scratch s = scratch.get();
+        int generation = s.nextGeneration();
+        int source = cell(sourceX, sourceY);
+        int target = cell(targetX, targetY);
+        prepareJumpMaps(s, blocked, targetX, targetY);
+
+        s.open(source, generation, 0, -1, heuristic(sourceX, sourceY, targetX, targetY));
+        while (s.heapSize > 0) {
+            int current = s.poll();
+            if (current == target) {
+                return buildJumpPath(s, target);
+            }
+            s.closed[current] = generation;
+
+            int cx = current % width;
+            int cy = current / width;
+            int currentDistance = s.distance[current];
+            int directions = s.previous[current] < 0 ? 0xFF : prunedDirections(s, current, s.previous[current]);
+            for (int d = 0; d < 8; d++) {
+                if ((directions & (1 << d)) == 0) {
+                    continue;
+                }
+                int next = jump(s, cx, cy, DX[d], DY[d], targetX, targetY);
+                if (next < 0 || s.closed[next] == generation) {
+                    continue;
+                }
+                int nx = next % width;
+                int ny = next / width;
+                int distance = currentDistance + Math.max(Math.abs(nx - cx), Math.abs(ny - cy)) * COST[d];
+                if (s.seen[next] != generation) {
+                    s.open(next, generation, distance, current, distance + heuristic(nx, ny, targetX, targetY));
+                } else if (distance < s.distance[next]) {
+                    s.decrease(next, distance, current, distance + heuristic(nx, ny, targetX, targetY));
+                }
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    // Копии карты для поиска прыжками: по строкам (как есть) и по столбцам (ячейка x * height + y). Цель в обеих свободна
+    private void prepareJumpMaps(Scratch s, long[] blocked, int targetX, int targetY) {
+        int words = s.rows.length;
+        System.arraycopy(blocked, 0, s.rows, 0, words);
+        Arrays.fill(s.columns, 0L);
+        for (int word = 0; word < words; word++) {
+            for (long bits = blocked[word]; bits != 0; bits &= bits - 1) {
+                int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+                if (cell < size) {
+                    set(s.columns, (cell % width) * height + cell / width);
+                }
+            }
+        }
+        clear(s.rows, cell(targetX, targetY));
+        clear(s.columns, targetX * height + targetY);
+    }
+
+    // Ячейка проходима: внутри поля и свободна на карте поиска прыжками
+    private boolean walkable(Scratch s, int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height && !isSet(s.rows, y * width + x);
+    }
+
+    // Направления, которые стоит продолжать из развилки, если в неё пришли из parent: естественные (вперёд по ходу движения)
+    // и вынужденные (в обход препятствия сбоку). Результат - маска номеров направлений
+    private int prunedDirections(Scratch s, int current, int parent) {
+        int x = current % width;
+        int y = current / width;
+        int dx = Integer.signum(x - parent % width);
+        int dy = Integer.signum(y - parent / width);
+        int mask = 0;
+        if (dx != 0 && dy != 0) {
+            mask |= bit(dx, dy) | bit(dx, 0) | bit(0, dy);
+            if (!walkable(s, x - dx, y)) {
+                mask |= bit(-dx, dy);
+            }
+            if (!walkable(s, x, y - dy)) {
+                mask |= bit(dx, -dy);
+            }
+        } else if (dx != 0) {
+            mask |= bit(dx, 0);
+            if (!walkable(s, x, y + 1)) {
+                mask |= bit(dx, 1);
+            }
+            if (!walkable(s, x, y - 1)) {
+                mask |= bit(dx, -1);
+            }
+        } else {
+            mask |= bit(0, dy);
+            if (!walkable(s, x + 1, y)) {
+                mask |= bit(1, dy);
+            }
+            if (!walkable(s, x - 1, y)) {
+                mask |= bit(-1, dy);
+            }
+        }
+        return mask;
+    }
+
+    private static int bit(int dx, int dy) {
+        return 1 << DIRECTION[(dy + 1) * 3 + dx + 1];
+    }
+
+    // Бежим из (x, y) в направлении (dx, dy) до следующей развилки или цели. Если упёрлись в препятствие или край поля, -1.
+    // По диагонали идём по ячейке, и развилкой считается также ячейка, из которой прямой пробег по любой из двух составляющих
+    // находит развилку. Прямые пробеги - словами битовой карты
+    private int jump(Scratch s, int x, int y, int dx, int dy, int targetX, int targetY) {
+        if (dy == 0) {
+            int found = scan(s.rows, width, height, y, x, dx, targetY, targetX);
+            return found < 0 ? -1 : cell(found, y);
+        }
+        if (dx == 0) {
+            int found = scan(s.columns, height, width, x, y, dy, targetX, targetY);
+            return found < 0 ? -1 : cell(x, found);
+        }
+        while (true) {
+            x += dx;
+            y += dy;
+            if (!walkable(s, x, y)) {
+                return -1;
+            }
+            if (x == targetX && y == targetY) {
+                return cell(x, y);
+            }
+            if ((!walkable(s, x - dx, y) && walkable(s, x - dx, y + dy))
+                    || (!walkable(s, x, y - dy) && walkable(s, x + dx, y - dy))) {
+                return cell(x, y);
+            }
+            if (scan(s.rows, width, height, y, x, dx, targetY, targetX) >= 0
+                    || scan(s.columns, height, width, x, y, dy, targetX, targetY) >= 0) {
+                return cell(x, y);
+            }
+        }
+    }
+
+    // Прямой пробег по строке line карты map (length ячеек в строке, lines строк) от позиции from в направлении step.
+    // Останавливаемся на цели (targetLine, targetPosition), на развилке - свободной ячейке, у которой сбоку занято,
+    // а по ходу сбоку свободно, - или на препятствии. Возвращает позицию развилки или цели в строке, либо -1.
+    // За одну итерацию проверяется 64 ячейки
+    private static int scan(long[] map, int length, int lines, int line, int from, int step, int targetLine, int targetPosition) {
+        for (int position = from + step; position >= 0 && position < length; position += 64 * step) {
+            // Окно из 64 ячеек от position по ходу движения: бит i - ячейка start + i
+            int start = step > 0 ? position : position - 63;
+            long here = window(map, length, lines, line, start);
+            long left = window(map, length, lines, line - 1, start);
+            long right = window(map, length, lines, line + 1, start);
+            long leftAhead = window(map, length, lines, line - 1, start + step);
+            long rightAhead = window(map, length, lines, line + 1, start + step);
+            long goal = line == targetLine && targetPosition >= start && targetPosition < start + 64
+                    ? 1L << (targetPosition - start) : 0;
+            long stop = here | (left & ~leftAhead) | (right & ~rightAhead) | goal;
+            if (stop != 0) {
+                int i = step > 0 ? Long.numberOfTrailingZeros(stop) : 63 - Long.numberOfLeadingZeros(stop);
+                return (goal & (1L << i)) != 0 || (here & (1L << i)) == 0 ? start + i : -1;
+            }
+        }
+        return -1;
+    }
+
+    // 64 ячейки строки line начиная с позиции start. Ячейки за пределами поля считаются занятыми
+    private static long window(long[] map, int length, int lines, int line, int start) {
+        if (line < 0 || line >= lines || start >= length || start <= -64) {
+            return -1L;
+        }
+        int p = line * length + start;
+        int word = p >> 6;
+        int offset = p & 63;
+        long low = word >= 0 && word < map.length ? map[word] : 0;
+        long bits = low >>> offset;
+        if (offset != 0) {
+            long high = word + 1 >= 0 && word + 1 < map.length ? map[word + 1] : 0;
+            bits |= high << (64 - offset);
+        }
+        long valid = -1L;
+        if (start < 0) {
+            valid &= -1L << -start;
+        }
+        if (length - start < 64) {
+            valid &= (1L << (length - start)) - 1;
+        }
+        return bits | ~valid;
+    }
+
+    // Путь по развилкам разворачиваем в пошаговый: между соседними развилками всегда прямая или чистая диагональ
+    private List<Edge> buildJumpPath(Scratch s, int end) {
+        List<Edge> path = new ArrayList<>();
+        for (int c = end; c != -1; c = s.previous[c]) {
+            int x = c % width;
+            int y = c / width;
+            path.add(new Edge(x, y));
+            int p = s.previous[c];
+            if (p < 0) {
+                break;
+            }
+            int dx = Integer.signum(p % width - x);
+            int dy = Integer.signum(p / width - y);
+            for (x += dx, y += dy; y * width + x != p; x += dx, y += dy) {
+                path.add(new Edge(x, y));
+            }
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    // Пакетный поиск от одного источника сразу до нескольких целей: обычная Дейкстра без эвристики, один проход по полю.
+    // Ячейки целей достижимы, но сквозь них не ходим - там стоят бойцы. Номера достигнутых целей (индексы в targetCells)
+    // пишутся в reached по возрастанию расстояния, поиск останавливается, как только найдено limit целей или закончилось поле.
+    // Возвращает число достигнутых целей. Расстояния и пути до них можно забрать методами distanceTo и pathTo,
+    // пока в этом же потоке не запущен следующий поиск
+    int findNearest(int sourceX, int sourceY, int[] targetCells, int targetCount, int limit, long[] blocked, int[] reached) {
+        if (!inside(sourceX, sourceY) || limit <= 0) {
+            return 0;
+        }
+
+        Scratch s = scratch.get();
+        int generation = s.nextGeneration();
+        int pending = 0;
+        for (int i = 0; i < targetCount; i++) {
+            int target = targetCells[i];
+            if (target >= 0 && target < size && s.targets[target] != generation) {
+                s.targets[target] = generation;
+                s.targetSlot[target] = i;
+                pending++;
+            }
+        }
+
+        int found = 0;
+        s.open(cell(sourceX, sourceY), generation, 0, -1, 0);
+        while (s.heapSize > 0 && pending > 0) {
+            int current = s.poll();
+            s.closed[current] = generation;
+
+            // Дошли до очередной цели - запоминаем её, а дальше через неё не идём
+            if (s.targets[current] == generation) {
+                reached[found++] = s.targetSlot[current];
+                pending--;
+                if (found == limit) {
+                    break;
+                }
+                continue;
+            }
+
+            int cx = current % width;
+            int cy = current / width;
+            int currentDistance = s.distance[current];
+            for (int d = 0; d < 8; d++) {
+                int nx = cx + DX[d];
+                int ny = cy + DY[d];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                    continue;
+                }
+                int next = ny * width + nx;
+                if (s.closed[next] == generation || (s.targets[next] != generation && isSet(blocked, next))) {
+                    continue;
+                }
+                int distance = currentDistance + COST[d];
+                if (s.seen[next] != generation) {
+                    s.open(next, generation, distance, current, distance);
+                } else if (distance < s.distance[next]) {
+                    s.decrease(next, distance, current, distance);
+                }
+            }
+        }
+
+        return found;
+    }
+
+    // Поле расстояний до заданной ячейки: Дейкстра от неё по всему полю. Граф симметричный, поэтому это же и расстояния от любой
+    // ячейки до неё. Занятые ячейки не заполняются (остаются UNREACHABLE), но их соседи заполняются, а этого достаточно,
+    // чтобы стоящий там боец мог спуститься по полю к цели методом followField
+    void fillDistanceField(int targetX, int targetY, long[] blocked, int[] field) {
+        Arrays.fill(field, UNREACHABLE);
+        if (!inside(targetX, targetY)) {
+            return;
+        }
+
+        Scratch s = scratch.get();
+        int generation = s.nextGeneration();
+        s.open(cell(targetX, targetY), generation, 0, -1, 0);
+        while (s.heapSize > 0) {
+            int current = s.poll();
+            s.closed[current] = generation;
+            int currentDistance = s.distance[current];
+            field[current] = currentDistance;
+
+            int cx = current % width;
+            int cy = current / width;
+            for (int d = 0; d < 8; d++) {
+                int nx = cx + DX[d];
+                int ny = cy + DY[d];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                    continue;
+                }
+                int next = ny * width + nx;
+                if (s.closed[next] == generation || isSet(blocked, next)) {
+                    continue;
+                }
+                int distance = currentDistance + COST[d];
+                if (s.seen[next] != generation) {
+                    s.open(next, generation, distance, current, distance);
+                } else if (distance < s.distance[next]) {
+                    s.decrease(next, distance, current, distance);
+                }
+            }
+        }
+    }
+
+    // Спуск по полю расстояний от источника к цели: на каждом шаге выбираем соседа, через которого до цели ближе всего.
+    // Сложность O(длина пути), если цель недостижима - пустой список
+    List<Edge> followField(int sourceX, int sourceY, int targetX, int targetY, int[] field) {
+        if (!inside(sourceX, sourceY) || !inside(targetX, targetY)) {
+            return Collections.emptyList();
+        }
+        int target = cell(targetX, targetY);
+        int current = cell(sourceX, sourceY);
+        List<Edge> path = new ArrayList<>();
+        path.add(new Edge(sourceX, sourceY));
+        while (current != target) {
+            int cx = current % width;
+            int cy = current / width;
+
+            // Поле точное, поэтому лучший сосед всегда строго ближе к цели и зациклиться спуск не может
+            int best = -1;
+            int bestDistance = UNREACHABLE;
+            for (int d = 0; d < 8; d++) {
+                int nx = cx + DX[d];
+                int ny = cy + DY[d];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                    continue;
+                }
+                int next = ny * width + nx;
+                if (field[next] != UNREACHABLE && field[next] + COST[d] < bestDistance) {
+                    best = next;
+                    bestDistance = field[next] + COST[d];
+                }
+            }
+            if (best < 0) {
+                return Collections.emptyList();
+            }
+            current = best;
+            path.add(new Edge(current % width, current / width));
+        }
+        return path;
+    }
+
+    // Расстояние от ячейки до цели поля через лучшего соседа: один шаг плюс значение поля у соседа. Для занятой ячейки, у которой
+    // своего значения в поле нет, это её расстояние до цели. UNREACHABLE - если ни один сосед до цели не доходит
+    int stepDistance(int cell, int[] field) {
+        int cx = cell % width;
+        int cy = cell / width;
+        int best = UNREACHABLE;
+        for (int d = 0; d < 8; d++) {
+            int nx = cx + DX[d];
+            int ny = cy + DY[d];
+            if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                continue;
+            }
+            int next = ny * width + nx;
+            if (field[next] != UNREACHABLE && field[next] + COST[d] < best) {
+                best = field[next] + COST[d];
+            }
+        }
+        return best;
+    }
+
+    // Октильное расстояние между ячейками - нижняя оценка длины любого пути между ними
+    int heuristic(int from, int to) {
+        return heuristic(from % width, from / width, to % width, to / width);
+    }
+
+    // Расстояние до ячейки, найденное последним пакетным поиском в этом потоке
+    int distanceTo(int cell) {
+        return scratch.get().distance[cell];
+    }
+
+    // Путь до ячейки, найденный последним пакетным поиском в этом потоке
+    List<Edge> pathTo(int cell) {
+        return buildPath(scratch.get(), cell);
+    }
+
+    // Октильное расстояние: сколько-то шагов по диагонали (7), остальное по прямой (5)
+    static int heuristic(int x, int y, int targetX, int targetY) {
+        int dx = Math.abs(x - targetX);
+        int dy = Math.abs(y - targetY);
+        return STRAIGHT_COST * Math.max(dx, dy) + (DIAGONAL_COST - STRAIGHT_COST) * Math.min(dx, dy);
+    }
+
+    // Восстанавливаем путь от цели к источнику по ссылкам на предыдущие ячейки и разворачиваем его
+    private List<Edge> buildPath(Scratch s, int end) {
+        int length = 0;
+        for (int c = end; c != -1; c = s.previous[c]) {
+            length++;
+        }
+        List<Edge> path = new ArrayList<>(length);
+        for (int c = end; c != -1; c = s.previous[c]) {
+            path.add(new Edge(c % width, c / width));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    // Рабочие буферы одного потока. Вместо очистки массивов перед каждым поиском используется номер поколения:
+    // значение в ячейке считается действительным, только если её отметка совпадает с текущим поколением
+    static final class Scratch {
+        final int[] distance;
+        final int[] previous;
+        final int[] seen;
+        final int[] closed;
+
+        // Отметки целей пакетного поиска и их номера во входном массиве
+        final int[] targets;
+        final int[] targetSlot;
+
+        // Карты поиска прыжками: по строкам и транспонированная, по столбцам
+        final long[] rows;
+        final long[] columns;
+
+        // Буферы вызывающего: карта препятствий и входной и выходной массивы пакетного поиска
+        final long[] obstacles;
+        final int[] targetCells;
+        final int[] reached;
+
+        // Индексированная двоичная куча: heap хранит ячейки, position - место ячейки в куче, key - приоритет ячейки
+        final int[] heap;
+        final int[] position;
+        final int[] key;
+        int heapSize;
+
+        // Счётчик извлечённых из кучи ячеек за всё время, для метрик
+        long expanded;
+
+        private int generation;
+
+        Scratch(int size) {
+            this.distance = new int[size];
+            this.previous = new int[size];
+            this.seen = new int[size];
+            this.closed = new int[size];
+            this.targets = new int[size];
+            this.targetSlot = new int[size];
+            this.rows = new long[(size + 63) >>> 6];
+            this.columns = new long[(size + 63) >>> 6];
+            this.obstacles = new long[(size + 63) >>> 6];
+            this.targetCells = new int[size];
+            this.reached = new int[size];
+            this.heap = new int[size];
+            this.position = new int[size];
+            this.key = new int[size];
+        }
+
+        int nextGeneration() {
+            // При переполнении счётчика честно чистим отметки, иначе старые значения могли бы совпасть с новым поколением
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(seen, 0);
+                Arrays.fill(closed, 0);
+                Arrays.fill(targets, 0);
+                generation = 1;
+            }
+            heapSize = 0;
+            return generation;
+        }
+
+        void open(int cell, int generation, int distance, int previous, int priority) {
+            seen[cell] = generation;
+            this.distance[cell] = distance;
+            this.previous[cell] = previous;
+            key[cell] = priority;
+            heap[heapSize] = cell;
+            position[cell] = heapSize;
+            siftUp(heapSize++);
+        }
+
+        void decrease(int cell, int distance, int previous, int priority) {
+            this.distance[cell] = distance;
+            this.previous[cell] = previous;
+            key[cell] = priority;
+            siftUp(position[cell]);
+        }
+
+        int poll() {
+            expanded++;
+            int top = heap[0];
+            int last = heap[--heapSize];
+            if (heapSize > 0) {
+                heap[0] = last;
+                position[last] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        private void siftUp(int index) {
+            int cell = heap[index];
+            int priority = key[cell];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                int parentCell = heap[parent];
+                if (key[parentCell] <= priority) {
+                    break;
+                }
+                heap[index] = parentCell;
+                position[parentCell] = index;
+                index = parent;
+            }
+            heap[index] = cell;
+            position[cell] = index;
+        }
+
+        private void siftDown(int index) {
+            int cell = heap[index];
+            int priority = key[cell];
+            int half = heapSize >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                int right = child + 1;
+                if (right < heapSize && key[heap[right]] < key[heap[child]]) {
+                    child = right;
+                }
+                int childCell = heap[child];
+                if (priority <= key[childCell]) {
+                    break;
+                }
+                heap[index] = childCell;
+                position[childCell] = index;
+                index = child;
+            }
+            heap[index] = cell;
+            position[cell] = index;
+        }
+    }
+}
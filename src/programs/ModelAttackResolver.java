@@ -0,0 +1,131 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Модель хода для симуляций без программ бойцов. Программу игры скопировать нельзя, поэтому ход собран из программ этого проекта:
+// цели - открытые для атаки бойцы противника (SuitableForAttackUnitsFinderImpl), из них берётся ближайшая по пути
+// (UnitTargetPathFinderImpl), боец проходит путь до соседней с ней ячейки и бьёт. Урон - базовая атака с учётом бонуса атакующего
+// против типа цели и бонуса защиты цели против типа атаки.
+// Чем модель отличается от игры: за ход боец проходит весь путь, сколько бы он ни был длинным; стрелки подходят к цели так же,
+// как пехота; формула урона своя. Доли побед по модели - оценка баланса, а не точный прогноз игровой битвы
+final class ModelAttackResolver implements AttackResolver {
+    private final SuitableForAttackUnitsFinderImpl finder = new SuitableForAttackUnitsFinderImpl();
+    private final UnitTargetPathFinderImpl pathFinder = new UnitTargetPathFinderImpl();
+
+    // Колонки двух армий битвы. Бойцы уходят из зоны развёртывания, поэтому колонки - это фактические x бойцов,
+    // и пересобираются они, только если с прошлой сборки кто-то сдвинулся
+    private final Columns[] columns = {new Columns(), new Columns()};
+
+    // Все бойцы битвы и армии, из которых они собраны: по ним ищется путь, если битва идёт без контекста
+    private List<Unit> allUnits;
+    private List<Unit> firstArmy;
+    private List<Unit> secondArmy;
+
+    @Override
+    public Unit attack(Unit attacker, List<Unit> allies, List<Unit> enemies, boolean playerAttack) {
+        BattleContext context = BattleContext.current();
+        List<List<Unit>> enemyColumns = columns(enemies, allies, context);
+        if (enemyColumns == null) {
+            return null;
+        }
+
+        // Армия игрока бьёт по фронту компьютера - его правой колонке, армия компьютера - по левой колонке игрока
+        List<Unit> targets = finder.getSuitableUnits(enemyColumns, playerAttack);
+        if (targets.isEmpty()) {
+            return null;
+        }
+        List<UnitTargetPathFinderImpl.TargetPath> nearest = pathFinder.getTargetPaths(attacker, targets, allUnits(allies, enemies), 1);
+        if (nearest.isEmpty()) {
+            return null;
+        }
+
+        // Путь начинается ячейкой атакующего и кончается ячейкой цели: встаём на предпоследнюю
+        List<Edge> path = nearest.get(0).getPath();
+        Edge stop = path.get(path.size() - 2);
+        attacker.setxCoordinate(stop.getX());
+        attacker.setyCoordinate(stop.getY());
+
+        Unit target = nearest.get(0).getTarget();
+        int damage = (int) Math.round(attacker.getBaseAttack()
+                * bonus(attacker.getAttackBonuses(), target.getUnitType())
+                / bonus(target.getDefenceBonuses(), attacker.getAttackType()));
+        target.setHealth(target.getHealth() - Math.max(damage, 0));
+        if (target.getHealth() <= 0) {
+            target.setAlive(false);
+        }
+        return target;
+    }
+
+    // Колонки армии по фактическим x её бойцов, от левой к правой. Пустые колонки между бойцами не мешают поиску целей
+    private List<List<Unit>> columns(List<Unit> units, List<Unit> other, BattleContext context) {
+        long moves = context != null ? context.moves() : -1;
+        Columns slot = columns[0].units == units ? columns[0] : columns[1].units == units ? columns[1] : null;
+        if (slot != null && moves >= 0 && slot.moves == moves) {
+            return slot.columns;
+        }
+        if (slot == null) {
+            // Армий в битве две: новая армия занимает ячейку, которая не принадлежит её противнику
+            slot = columns[0].units == other ? columns[1] : columns[0];
+            slot.units = units;
+        }
+        slot.moves = moves;
+        slot.columns = group(units);
+        return slot.columns;
+    }
+
+    private static List<List<Unit>> group(List<Unit> units) {
+        int minX = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        for (Unit unit : units) {
+            if (unit.isAlive()) {
+                minX = Math.min(minX, unit.getxCoordinate());
+                maxX = Math.max(maxX, unit.getxCoordinate());
+            }
+        }
+        if (minX > maxX) {
+            return null;
+        }
+        List<List<Unit>> columns = new ArrayList<>(maxX - minX + 1);
+        for (int x = minX; x <= maxX; x++) {
+            columns.add(new ArrayList<>());
+        }
+        for (Unit unit : units) {
+            if (unit.isAlive()) {
+                columns.get(unit.getxCoordinate() - minX).add(unit);
+            }
+        }
+        return columns;
+    }
+
+    private List<Unit> allUnits(List<Unit> allies, List<Unit> enemies) {
+        boolean known = allies == firstArmy && enemies == secondArmy || allies == secondArmy && enemies == firstArmy;
+        if (!known) {
+            firstArmy = allies;
+            secondArmy = enemies;
+            allUnits = new ArrayList<>(allies.size() + enemies.size());
+            allUnits.addAll(allies);
+            allUnits.addAll(enemies);
+        }
+        return allUnits;
+    }
+
+    private static double bonus(Map<String, Double> bonuses, String key) {
+        if (bonuses == null || key == null) {
+            return 1.0;
+        }
+        Double bonus = bonuses.get(key);
+        return bonus == null || bonus <= 0 ? 1.0 : bonus;
+    }
+
+    // Колонки одной армии и число перемещений в битве на момент их сборки
+    private static final class Columns {
+        private List<Unit> units;
+        private long moves;
+        private List<List<Unit>> columns;
+    }
+}
@@ -0,0 +1,132 @@
+package programs;
+
+// Сводка по серии битв одной пары армий: доли побед, ничьих и поражений игрока, средняя длительность битвы, средний урон сторон
+// и доверительный интервал доли побед (интервал Уилсона, 95%). Интервал учитывает только случайность битв: насколько сама модель хода
+// (ModelAttackResolver) расходится с игрой, он не говорит
+public class MonteCarloResult {
+    private static final double Z95 = 1.959964;
+
+    private final long wins;
+    private final long draws;
+    private final long losses;
+    private final long roundsSum;
+    private final long roundsSquaresSum;
+    private final long playerDamageSum;
+    private final long computerDamageSum;
+
+    MonteCarloResult(long wins, long draws, long losses, long roundsSum, long roundsSquaresSum) {
+        this(wins, draws, losses, roundsSum, roundsSquaresSum, 0, 0);
+    }
+
+    MonteCarloResult(long wins, long draws, long losses, long roundsSum, long roundsSquaresSum,
+                     long playerDamageSum, long computerDamageSum) {
+        this.wins = wins;
+        this.draws = draws;
+        this.losses = losses;
+        this.roundsSum = roundsSum;
+        this.roundsSquaresSum = roundsSquaresSum;
+        this.playerDamageSum = playerDamageSum;
+        this.computerDamageSum = computerDamageSum;
+    }
+
+    // Итог одной битвы
+    static MonteCarloResult of(BattleOutcome outcome) {
+        long rounds = outcome.getRounds();
+        return new MonteCarloResult(
+                outcome.getWinner() == BattleOutcome.Winner.PLAYER ? 1 : 0,
+                outcome.getWinner() == BattleOutcome.Winner.DRAW ? 1 : 0,
+                outcome.getWinner() == BattleOutcome.Winner.COMPUTER ? 1 : 0,
+                rounds, rounds * rounds, outcome.getPlayerDamageTaken(), outcome.getComputerDamageTaken());
+    }
+
+    // Сводки независимых серий просто складываются
+    MonteCarloResult merge(MonteCarloResult other) {
+        return new MonteCarloResult(wins + other.wins, draws + other.draws, losses + other.losses,
+                roundsSum + other.roundsSum, roundsSquaresSum + other.roundsSquaresSum,
+                playerDamageSum + other.playerDamageSum, computerDamageSum + other.computerDamageSum);
+    }
+
+    public long getTrials() {
+        return wins + draws + losses;
+    }
+
+    public long getWins() {
+        return wins;
+    }
+
+    public long getDraws() {
+        return draws;
+    }
+
+    public long getLosses() {
+        return losses;
+    }
+
+    public double getWinRate() {
+        return rate(wins);
+    }
+
+    public double getDrawRate() {
+        return rate(draws);
+    }
+
+    public double getLossRate() {
+        return rate(losses);
+    }
+
+    public double getMeanRounds() {
+        return getTrials() == 0 ? 0 : (double) roundsSum / getTrials();
+    }
+
+    public double getRoundsStdDev() {
+        long n = getTrials();
+        if (n < 2) {
+            return 0;
+        }
+        double mean = getMeanRounds();
+        return Math.sqrt(Math.max((roundsSquaresSum - n * mean * mean) / (n - 1), 0));
+    }
+
+    // Средний урон, полученный армией игрока за битву (он же нанесённый компьютером)
+    public double getMeanPlayerDamageTaken() {
+        return getTrials() == 0 ? 0 : (double) playerDamageSum / getTrials();
+    }
+
+    // Средний урон, полученный армией компьютера за битву (он же нанесённый игроком)
+    public double getMeanComputerDamageTaken() {
+        return getTrials() == 0 ? 0 : (double) computerDamageSum / getTrials();
+    }
+
+    // Нижняя граница 95% доверительного интервала доли побед
+    public double getWinRateLow() {
+        return wilson(wins, -1);
+    }
+
+    // Верхняя граница 95% доверительного интервала доли побед
+    public double getWinRateHigh() {
+        return wilson(wins, 1);
+    }
+
+    private double rate(long count) {
+        return getTrials() == 0 ? 0 : (double) count / getTrials();
+    }
+
+    private double wilson(long count, int sign) {
+        long n = getTrials();
+        if (n == 0) {
+            return sign < 0 ? 0 : 1;
+        }
+        double p = (double) count / n;
+        double z2 = Z95 * Z95;
+        double centre = p + z2 / (2 * n);
+        double spread = Z95 * Math.sqrt(p * (1 - p) / n + z2 / (4.0 * n * n));
+        return Math.min(1, Math.max(0, (centre + sign * spread) / (1 + z2 / n)));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MonteCarloResult{trials=%d, win=%.4f [%.4f; %.4f], draw=%.4f, loss=%.4f, rounds=%.2f±%.2f}",
+                getTrials(), getWinRate(), getWinRateLow(), getWinRateHigh(), getDrawRate(), getLossRate(),
+                getMeanRounds(), getRoundsStdDev());
+    }
+}
@@ -0,0 +1,110 @@
+package programs;
+
+import java.util.Arrays;
+
+// Карта занятости игрового поля: один бит на ячейку, установлен - значит там стоит живой боец.
+// Карта живёт всю битву и обновляется точечно по событиям перемещения и гибели бойцов, а поиск пути читает её напрямую,
+// вместо того чтобы на каждый запрос заново перебирать всех бойцов. Каждое изменение увеличивает версию карты.
+// Последние освобождения ячеек карта помнит вместе с версиями: по ним кеш полей расстояний решает, годится ли ещё поле,
+// посчитанное на старой версии (занятые с тех пор ячейки видны по самой карте, а освобождённые - только по журналу)
+final class OccupancyGrid {
+    // Сколько последних освобождений помнит журнал
+    static final int FREED_LOG = 16;
+
+    private final int width;
+    private final int height;
+    private final long[] bits;
+    private long version;
+
+    // Журнал освобождений по кругу: ячейка и версия карты сразу после её освобождения. forgotten - версия последнего
+    // вытесненного из журнала освобождения: о том, что было не позже неё, журнал уже не знает
+    private final int[] freedCells = new int[FREED_LOG];
+    private final long[] freedVersions = new long[FREED_LOG];
+    private long freed;
+    private long forgotten;
+
+    OccupancyGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.bits = new long[(width * height + 63) >>> 6];
+    }
+
+    // Полная перестройка карты по состоянию бойцов битвы, по примитивным массивам. Нужна один раз, в начале битвы
+    void rebuild(ArmyState state) {
+        Arrays.fill(bits, 0L);
+        for (int id = 0; id < state.size(); id++) {
+            if (state.isAlive(id)) {
+                occupy(state.x[id], state.y[id]);
+            }
+        }
+        version++;
+        forgotten = version;
+    }
+
+    void occupy(int x, int y) {
+        if (inside(x, y)) {
+            GridPathEngine.set(bits, y * width + x);
+            version++;
+        }
+    }
+
+    void release(int x, int y) {
+        if (inside(x, y)) {
+            GridPathEngine.clear(bits, y * width + x);
+            version++;
+            int at = (int) (freed++ % FREED_LOG);
+            if (freed > FREED_LOG) {
+                forgotten = freedVersions[at];
+            }
+            freedCells[at] = y * width + x;
+            freedVersions[at] = version;
+        }
+    }
+
+    void move(int fromX, int fromY, int toX, int toY) {
+        release(fromX, fromY);
+        occupy(toX, toY);
+    }
+
+    boolean isBlocked(int x, int y) {
+        return inside(x, y) && GridPathEngine.isSet(bits, y * width + x);
+    }
+
+    // Сами биты отдаются без копирования, поиск пути только читает их
+    long[] bits() {
+        return bits;
+    }
+
+    long version() {
+        return version;
+    }
+
+    // Ячейки, освобождённые после версии since, - в cells, от последней к более ранним. Возвращает их число
+    // или -1, если журнал о части освобождений после since уже забыл
+    int freedSince(long since, int[] cells) {
+        if (forgotten > since) {
+            return -1;
+        }
+        int count = 0;
+        for (long i = freed - 1; i >= 0 && i >= freed - FREED_LOG; i--) {
+            int at = (int) (i % FREED_LOG);
+            if (freedVersions[at] <= since) {
+                break;
+            }
+            cells[count++] = freedCells[at];
+        }
+        return count;
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    private boolean inside(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+}
@@ -0,0 +1,65 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+
+import java.util.Arrays;
+
+// Лучший состав, найденный оптимизатором против заданной армии: сколько бойцов каждого типа каталога, каким строем они стоят,
+// готовая армия и итог серии битв, по которому состав оценён. Плюс немного статистики самого поиска
+public class OptimizedPreset {
+    private final int[] counts;
+    private final Formation formation;
+    private final Army army;
+    private final MonteCarloResult result;
+    private final int evaluations;
+    private final long cacheHits;
+
+    OptimizedPreset(int[] counts, Formation formation, Army army, MonteCarloResult result, int evaluations, long cacheHits) {
+        this.counts = counts;
+        this.formation = formation;
+        this.army = army;
+        this.result = result;
+        this.evaluations = evaluations;
+        this.cacheHits = cacheHits;
+    }
+
+    // Число бойцов каждого типа, по номерам в каталоге. Копия - состав не меняется
+    public int[] getCounts() {
+        return counts.clone();
+    }
+
+    public Formation getFormation() {
+        return formation;
+    }
+
+    public Army getArmy() {
+        return army;
+    }
+
+    // Итог битв найденной армии против соперника. Найденная армия играет за компьютер, так что её победы - это getLosses()
+    public MonteCarloResult getResult() {
+        return result;
+    }
+
+    // Доля побед найденной армии, ничья идёт за половину победы. Битвы оценки шли по модели хода ModelAttackResolver,
+    // поэтому это доля побед в модели (см. ArmyOptimizer), а не ожидаемая доля побед в игре
+    public double getFitness() {
+        return ArmyOptimizer.fitness(result);
+    }
+
+    // Сколько разных кандидатов пришлось оценить битвами
+    public int getEvaluations() {
+        return evaluations;
+    }
+
+    // Сколько раз оценка кандидата нашлась среди уже посчитанных
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    @Override
+    public String toString() {
+        return "OptimizedPreset{fitness=" + String.format("%.4f", getFitness()) + ", counts=" + Arrays.toString(counts) +
+                ", evaluations=" + evaluations + ", cacheHits=" + cacheHits + ", result=" + result + "}";
+    }
+}
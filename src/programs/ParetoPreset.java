@@ -0,0 +1,41 @@
+package programs;
+
+import java.util.Arrays;
+
+// Один состав с фронта Парето: сколько бойцов каждого типа каталога взято и суммарные атака, здоровье и стоимость состава
+public class ParetoPreset {
+    private final int[] counts;
+    private final long totalAttack;
+    private final long totalHealth;
+    private final int totalCost;
+
+    ParetoPreset(int[] counts, long totalAttack, long totalHealth, int totalCost) {
+        this.counts = counts;
+        this.totalAttack = totalAttack;
+        this.totalHealth = totalHealth;
+        this.totalCost = totalCost;
+    }
+
+    // Число бойцов каждого типа, по номерам в каталоге. Копия - состав не меняется
+    public int[] getCounts() {
+        return counts.clone();
+    }
+
+    public long getTotalAttack() {
+        return totalAttack;
+    }
+
+    public long getTotalHealth() {
+        return totalHealth;
+    }
+
+    public int getTotalCost() {
+        return totalCost;
+    }
+
+    @Override
+    public String toString() {
+        return "ParetoPreset{attack=" + totalAttack + ", health=" + totalHealth + ", cost=" + totalCost +
+                ", counts=" + Arrays.toString(counts) + "}";
+    }
+}
@@ -0,0 +1,353 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ToIntFunction;
+
+// Многокритериальный подбор состава: вместо одной армии с наибольшим "опытом" - все составы, которые нельзя улучшить
+// ни по суммарной атаке, ни по суммарному здоровью, не ухудшив другого (фронт Парето), в пределах бюджета maxPoints.
+// Это тот же рюкзак, что и в GeneratePresetImpl (двоичное разбиение ограничения на число бойцов, затем 0/1 по частям),
+// только в ячейке бюджета w лежит не одно лучшее значение, а свой маленький фронт (атака, здоровье) составов стоимостью не больше w.
+// Доминируемые составы отсекаются при каждом слиянии фронтов. Ячейки бюджета на каждом шаге независимы друг от друга,
+// поэтому шаг раскладывается по ядрам через fork-join. Сложность O(p * W * f), где p - число частей, W = maxPoints, f - размер фронта
+public class ParetoPresetGenerator {
+    // Сколько ячеек бюджета задача обрабатывает сама, не деля дальше
+    private static final int CELLS_PER_TASK = 256;
+
+    // На сколько долей делим вес атаки и здоровья при затравке: затравочных составов получается WEIGHTS + 1
+    private static final int WEIGHTS = 8;
+
+    private final ForkJoinPool pool;
+
+    public ParetoPresetGenerator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParetoPresetGenerator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Фронт Парето по атаке и здоровью для бюджета maxPoints, по убыванию атаки (и, значит, по возрастанию здоровья).
+    // Из равных по атаке и здоровью составов остаётся самый дешёвый. Бойцов одного типа не больше, чем в обычной генерации
+    public List<ParetoPreset> generate(List<Unit> unitList, int maxPoints) {
+        int capacity = Math.max(maxPoints, 0);
+
+        // Двоичное разбиение, как в generateKnapsackMethod: тип и число бойцов в каждой части
+        List<int[]> parts = new ArrayList<>();
+        for (int type = 0; type < unitList.size(); type++) {
+            Unit unit = unitList.get(type);
+            int bound = GeneratePresetImpl.MAX_UNITS_IN_SQUAD;
+            if (unit.getCost() > 0) {
+                bound = Math.min(bound, capacity / unit.getCost());
+            }
+            for (int chunk = 1; bound > 0; chunk <<= 1) {
+                int count = Math.min(chunk, bound);
+                parts.add(new int[]{type, count});
+                bound -= count;
+            }
+        }
+
+        // front[w] - фронт составов стоимостью не больше w. Поначалу везде только пустой состав
+        Label[][] front = new Label[capacity + 1][];
+        Arrays.fill(front, new Label[]{Label.EMPTY});
+        Label[][] next = new Label[capacity + 1][];
+        Remainder remainder = new Remainder(unitList, parts);
+        Label[] seeds = seed(unitList, parts, capacity);
+        for (int k = 0; k < parts.size(); k++) {
+            int[] part = parts.get(k);
+            Unit unit = unitList.get(part[0]);
+            Bound bound = new Bound(seeds, front[capacity], remainder, k + 1, capacity);
+            Step step = new Step(front, next, new Part(unit, part[0], part[1]), bound, 0, capacity + 1);
+            if (capacity + 1 > CELLS_PER_TASK) {
+                pool.invoke(step);
+            } else {
+                step.compute();
+            }
+            Label[][] swap = front;
+            front = next;
+            next = swap;
+        }
+
+        List<ParetoPreset> result = new ArrayList<>(front[capacity].length);
+        for (Label label : front[capacity]) {
+            result.add(label.toPreset(unitList.size()));
+        }
+        return result;
+    }
+
+    // Затравка для отсечения: лучшие составы по взвешенной сумме weight * атака + (WEIGHTS - weight) * здоровье для каждого веса.
+    // Каждый - обычный рюкзак 0/1 по тем же частям за O(p * W), и каждый лежит на итоговом фронте, так что отсечение работает с первого шага.
+    // Сами составы не нужны, только их атака и здоровье
+    static Label[] seed(List<Unit> unitList, List<int[]> parts, int capacity) {
+        List<Label> seeds = new ArrayList<>(WEIGHTS + 1);
+        long[] best = new long[capacity + 1];
+        long[] attack = new long[capacity + 1];
+        long[] health = new long[capacity + 1];
+        for (int weight = 0; weight <= WEIGHTS; weight++) {
+            Arrays.fill(best, 0L);
+            Arrays.fill(attack, 0L);
+            Arrays.fill(health, 0L);
+            for (int[] part : parts) {
+                Part p = new Part(unitList.get(part[0]), part[0], part[1]);
+                long value = weight * p.attack + (WEIGHTS - weight) * p.health;
+                for (int w = capacity; w >= p.cost; w--) {
+                    long candidate = best[w - p.cost] + value;
+                    if (candidate > best[w]) {
+                        best[w] = candidate;
+                        attack[w] = attack[w - p.cost] + p.attack;
+                        health[w] = health[w - p.cost] + p.health;
+                    }
+                }
+            }
+            seeds.add(new Label(attack[capacity], health[capacity], 0, null, null));
+        }
+
+        // Оставляем только недоминируемые, по убыванию атаки
+        seeds.sort((a, b) -> a.attack != b.attack ? Long.compare(b.attack, a.attack) : Long.compare(b.health, a.health));
+        List<Label> front = new ArrayList<>(seeds.size());
+        for (Label label : seeds) {
+            if (front.isEmpty() || label.health > front.get(front.size() - 1).health) {
+                front.add(label);
+            }
+        }
+        return front.toArray(new Label[0]);
+    }
+
+    // Слияние фронта без части (kept) и фронта с частью (base, к каждому составу добавлена часть). Оба отсортированы по убыванию атаки
+    // с возрастающим здоровьем, результат такой же. Составы с частью создаются, только если они попадают во фронт. Сложность O(f)
+    static Label[] merge(Label[] kept, Label[] base, Part part) {
+        List<Label> merged = new ArrayList<>(kept.length + base.length);
+        long bestHealth = Long.MIN_VALUE;
+        int i = 0;
+        int j = 0;
+        while (i < kept.length || j < base.length) {
+            boolean takeKept;
+            if (j == base.length) {
+                takeKept = true;
+            } else if (i == kept.length) {
+                takeKept = false;
+            } else {
+                Label a = kept[i];
+                Label b = base[j];
+                long attack = b.attack + part.attack;
+                long health = b.health + part.health;
+                takeKept = a.attack != attack ? a.attack > attack
+                        : a.health != health ? a.health > health
+                        : a.cost <= b.cost + part.cost;
+            }
+
+            if (takeKept) {
+                Label a = kept[i++];
+                if (a.health > bestHealth) {
+                    bestHealth = a.health;
+                    merged.add(a);
+                }
+            } else {
+                Label b = base[j++];
+                if (b.health + part.health > bestHealth) {
+                    bestHealth = b.health + part.health;
+                    merged.add(new Label(b, part));
+                }
+            }
+        }
+        return merged.toArray(new Label[0]);
+    }
+
+    // Сколько атаки и здоровья ещё можно набрать частями начиная с k: не больше их суммы и не больше бюджета,
+    // умноженного на лучшее отношение атаки (здоровья) к стоимости среди них. Отношение храним дробью, чтобы граница не занижалась округлением.
+    // Бесплатные части в отношение не укладываются, тогда берём сумму
+    static final class Remainder {
+        private final long[] attack;
+        private final long[] health;
+        private final Unit[] attackLeader;
+        private final Unit[] healthLeader;
+        private final boolean[] free;
+
+        Remainder(List<Unit> unitList, List<int[]> parts) {
+            int size = parts.size();
+            attack = new long[size + 1];
+            health = new long[size + 1];
+            attackLeader = new Unit[size + 1];
+            healthLeader = new Unit[size + 1];
+            free = new boolean[size + 1];
+            for (int k = size - 1; k >= 0; k--) {
+                Unit unit = unitList.get(parts.get(k)[0]);
+                int count = parts.get(k)[1];
+                attack[k] = attack[k + 1] + (long) unit.getBaseAttack() * count;
+                health[k] = health[k + 1] + (long) unit.getHealth() * count;
+                free[k] = free[k + 1] || unit.getCost() <= 0;
+                attackLeader[k] = leader(attackLeader[k + 1], unit, unit.getBaseAttack(), Unit::getBaseAttack);
+                healthLeader[k] = leader(healthLeader[k + 1], unit, unit.getHealth(), Unit::getHealth);
+            }
+        }
+
+        // Тип с лучшим отношением value / cost: a / b > c / d равносильно a * d > c * b
+        private static Unit leader(Unit leader, Unit unit, int value, ToIntFunction<Unit> of) {
+            if (unit.getCost() <= 0) {
+                return leader;
+            }
+            if (leader == null || (long) value * leader.getCost() > (long) of.applyAsInt(leader) * unit.getCost()) {
+                return unit;
+            }
+            return leader;
+        }
+
+        long attack(int k, int budget) {
+            return bound(attack[k], attackLeader[k], k, budget, Unit::getBaseAttack);
+        }
+
+        long health(int k, int budget) {
+            return bound(health[k], healthLeader[k], k, budget, Unit::getHealth);
+        }
+
+        private long bound(long total, Unit leader, int k, int budget, ToIntFunction<Unit> of) {
+            if (free[k] || leader == null) {
+                return total;
+            }
+            return Math.min(total, (long) budget * of.applyAsInt(leader) / leader.getCost());
+        }
+    }
+
+    // Отсечение по затравке и уже найденному фронту полного бюджета: составы из них допустимы, и если один из них строго лучше
+    // оптимистичного продолжения состава, то продолжение на итоговый фронт не попадёт. Поэтому ответ остаётся точным
+    static final class Bound {
+        private final Label[] seeds;
+        private final Label[] incumbent;
+        private final Remainder remainder;
+        private final int next;
+        private final int capacity;
+
+        Bound(Label[] seeds, Label[] incumbent, Remainder remainder, int next, int capacity) {
+            this.seeds = seeds;
+            this.incumbent = incumbent;
+            this.remainder = remainder;
+            this.next = next;
+            this.capacity = capacity;
+        }
+
+        // Составы ячейки бюджета w. Доборы к ним помещаются в capacity - w, от их собственной стоимости не считаем:
+        // внутри ячейки составы вытесняют друг друга без оглядки на стоимость, и граница должна быть одна на всю ячейку
+        Label[] filter(Label[] labels, int w) {
+            int budget = capacity - w;
+            int kept = 0;
+            Label[] result = null;
+            for (int i = 0; i < labels.length; i++) {
+                Label label = labels[i];
+                long attack = label.attack + remainder.attack(next, budget);
+                long health = label.health + remainder.health(next, budget);
+                boolean hopeless = dominated(seeds, attack, health) || dominated(incumbent, attack, health);
+                if (hopeless && result == null) {
+                    result = Arrays.copyOf(labels, labels.length);
+                    kept = i;
+                } else if (!hopeless && result != null) {
+                    result[kept++] = label;
+                }
+            }
+            return result == null ? labels : Arrays.copyOf(result, kept);
+        }
+
+        // Есть ли на фронте состав не хуже (attack, health) и хоть в чём-то строго лучше. Фронт по убыванию атаки, здоровье растёт,
+        // так что среди составов с атакой не меньше attack больше всего здоровья у последнего - ищем его двоичным поиском
+        private static boolean dominated(Label[] front, long attack, long health) {
+            int low = 0;
+            int high = front.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (front[middle].attack >= attack) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            if (low == 0) {
+                return false;
+            }
+            Label best = front[low - 1];
+            return best.health > health || best.health == health && best.attack > attack;
+        }
+    }
+
+    // Часть разбиения: count бойцов типа type, их суммарные стоимость, атака и здоровье
+    static final class Part {
+        final int type;
+        final int count;
+        final int cost;
+        final long attack;
+        final long health;
+
+        Part(Unit unit, int type, int count) {
+            this.type = type;
+            this.count = count;
+            this.cost = unit.getCost() * count;
+            this.attack = (long) unit.getBaseAttack() * count;
+            this.health = (long) unit.getHealth() * count;
+        }
+    }
+
+    // Состав на фронте. Кто в него входит, восстанавливается по цепочке: состав без последней части плюс эта часть
+    static final class Label {
+        static final Label EMPTY = new Label(0, 0, 0, null, null);
+
+        final long attack;
+        final long health;
+        final int cost;
+        private final Label parent;
+        private final Part part;
+
+        private Label(long attack, long health, int cost, Label parent, Part part) {
+            this.attack = attack;
+            this.health = health;
+            this.cost = cost;
+            this.parent = parent;
+            this.part = part;
+        }
+
+        Label(Label parent, Part part) {
+            this(parent.attack + part.attack, parent.health + part.health, parent.cost + part.cost, parent, part);
+        }
+
+        ParetoPreset toPreset(int types) {
+            int[] counts = new int[types];
+            for (Label label = this; label.part != null; label = label.parent) {
+                counts[label.part.type] += label.part.count;
+            }
+            return new ParetoPreset(counts, attack, health, cost);
+        }
+    }
+
+    // Шаг рюкзака для ячеек бюджета [from, to): в ячейке, куда часть помещается, сливаем фронт без неё и фронт с ней
+    private static final class Step extends RecursiveAction {
+        private final Label[][] front;
+        private final Label[][] next;
+        private final Part part;
+        private final Bound bound;
+        private final int from;
+        private final int to;
+
+        Step(Label[][] front, Label[][] next, Part part, Bound bound, int from, int to) {
+            this.front = front;
+            this.next = next;
+            this.part = part;
+            this.bound = bound;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CELLS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Step(front, next, part, bound, from, middle), new Step(front, next, part, bound, middle, to));
+                return;
+            }
+            for (int w = from; w < to; w++) {
+                next[w] = bound.filter(w >= part.cost ? merge(front[w], front[w - part.cost], part) : front[w], w);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+// Кеш составов подразделений. Лобби вызывает генерацию тысячи раз с одним и тем же каталогом и парой-тройкой бюджетов,
+// поэтому сам подбор бойцов считаем один раз, а на каждый вызов остаётся только расстановка.
+// Состав хранится как последовательность номеров бойцов каталога, так что он подходит к любому каталогу с тем же отпечатком.
+// Размер каталога входит в ключ отдельно от отпечатка: даже если отпечатки двух каталогов совпадут, состав из кеша
+// не сошлётся на номер за пределами каталога
+// Кеш ограничен по размеру и вытесняет давно не использованные составы, безопасен для многопоточного использования
+public class PresetCache {
+    private final int capacity;
+    private final Map<Key, int[]> compositions;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PresetCache(int capacity) {
+        this.capacity = capacity;
+        this.compositions = new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+                return size() > PresetCache.this.capacity;
+            }
+        };
+    }
+
+    // Отпечаток каталога: всё, от чего зависит подбор, - порядок, тип, атака, здоровье и стоимость бойцов
+    public static long fingerprint(List<Unit> unitList) {
+        long hash = unitList.size();
+        for (Unit unit : unitList) {
+            hash = mix(hash, Objects.hashCode(unit.getUnitType()));
+            hash = mix(hash, unit.getBaseAttack());
+            hash = mix(hash, unit.getHealth());
+            hash = mix(hash, unit.getCost());
+        }
+        return hash;
+    }
+
+    // Состав для ключа: из кеша либо посчитанный заново. Считаем вне блокировки, чтобы долгий подбор не задерживал остальных
+    int[] get(long fingerprint, int catalogSize, int maxPoints, GeneratePresetImpl.Method method, ToIntFunction<Unit> objective,
+              Supplier<int[]> compute) {
+        Key key = new Key(fingerprint, catalogSize, maxPoints, method, objective);
+        int[] composition;
+        synchronized (compositions) {
+            composition = compositions.get(key);
+        }
+        if (composition != null) {
+            hits.increment();
+            return composition;
+        }
+
+        misses.increment();
+        composition = compute.get();
+        synchronized (compositions) {
+            compositions.put(key, composition);
+        }
+        return composition;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        synchronized (compositions) {
+            return compositions.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (compositions) {
+            compositions.clear();
+        }
+    }
+
+    private static long mix(long hash, long value) {
+        long z = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        return z ^ (z >>> 31);
+    }
+
+    // Ключ состава. Способ подбора и целевая функция сравниваются по ссылке
+    private static final class Key {
+        private final long fingerprint;
+        private final int catalogSize;
+        private final int maxPoints;
+        private final GeneratePresetImpl.Method method;
+        private final ToIntFunction<Unit> objective;
+
+        Key(long fingerprint, int catalogSize, int maxPoints, GeneratePresetImpl.Method method, ToIntFunction<Unit> objective) {
+            this.fingerprint = fingerprint;
+            this.catalogSize = catalogSize;
+            this.maxPoints = maxPoints;
+            this.method = method;
+            this.objective = objective;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return fingerprint == other.fingerprint && catalogSize == other.catalogSize && maxPoints == other.maxPoints
+                    && method == other.method && objective == other.objective;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(fingerprint) * 31 + maxPoints;
+        }
+    }
+}
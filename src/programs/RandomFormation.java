@@ -0,0 +1,56 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.List;
+
+// Случайная расстановка: бойцы разбирают ячейки из перетасованного пула свободных. Тасуем лениво, по одной ячейке на бойца
+// (частичная перестановка Фишера-Йетса), так что каждая расстановка стоит O(1) и никогда не промахивается по занятой ячейке.
+// Пул - не новый массив на каждый вызов, а рабочий буфер потока, в котором лежит тождественная перестановка ячеек.
+// После расстановки затронутые позиции возвращаются на место, так что вызов стоит O(бойцов), а не O(ячеек зоны)
+final class RandomFormation implements Formation {
+    // Пул ячеек, свой у каждого потока. Между вызовами pool[i] == i
+    private static final ThreadLocal<int[][]> POOL = ThreadLocal.withInitial(() -> new int[1][0]);
+
+    @Override
+    public void arrange(List<Unit> squad, int columns, int rows, RandomSource random, int[] cells) {
+        int size = columns * rows;
+        int[] pool = pool(size);
+        int placed = 0;
+        try {
+            for (int i = 0; i < squad.size(); i++) {
+                if (i >= size) {
+                    cells[i] = -1;
+                    continue;
+                }
+                int j = i + random.nextInt(size - i);
+                int cell = pool[j];
+                pool[j] = pool[i];
+                pool[i] = cell;
+                cells[i] = cell;
+                placed++;
+            }
+        } finally {
+            // Обмены переносят ячейки только между первыми placed позициями и остальными. Поэтому за пределами первых placed
+            // сдвинута ровно та позиция, чья собственная ячейка ушла вперёд, в cells
+            for (int i = 0; i < placed; i++) {
+                if (cells[i] >= placed) {
+                    pool[cells[i]] = cells[i];
+                }
+                pool[i] = i;
+            }
+        }
+    }
+
+    private static int[] pool(int size) {
+        int[][] holder = POOL.get();
+        if (holder[0].length < size) {
+            int[] pool = new int[size];
+            for (int i = 0; i < size; i++) {
+                pool[i] = i;
+            }
+            holder[0] = pool;
+        }
+        return holder[0];
+    }
+}
@@ -0,0 +1,72 @@
+package programs;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Источник случайности для симуляции и генерации армий. Везде, где нужна случайность, она берётся отсюда, а не из Math.random():
+// засеянный источник позволяет в точности переиграть любую битву, а у каждого потока свой генератор, так что параллельные прогоны
+// не толкаются на одном общем Random
+public interface RandomSource {
+
+    // Случайное число от 0 (включительно) до bound (не включительно)
+    int nextInt(int bound);
+
+    boolean nextBoolean();
+
+    long nextLong();
+
+    // Воспроизводимый источник: одно и то же зерно - одна и та же последовательность
+    static RandomSource seeded(long seed) {
+        return new Seeded(new SplittableRandom(seed));
+    }
+
+    // Невоспроизводимый источник по умолчанию: генератор текущего потока, без общей на всех блокировки
+    static RandomSource threadLocal() {
+        return ThreadLocalSource.INSTANCE;
+    }
+
+    final class Seeded implements RandomSource {
+        private final SplittableRandom random;
+
+        private Seeded(SplittableRandom random) {
+            this.random = random;
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            return random.nextInt(bound);
+        }
+
+        @Override
+        public boolean nextBoolean() {
+            return random.nextBoolean();
+        }
+
+        @Override
+        public long nextLong() {
+            return random.nextLong();
+        }
+    }
+
+    final class ThreadLocalSource implements RandomSource {
+        private static final ThreadLocalSource INSTANCE = new ThreadLocalSource();
+
+        private ThreadLocalSource() {
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            return ThreadLocalRandom.current().nextInt(bound);
+        }
+
+        @Override
+        public boolean nextBoolean() {
+            return ThreadLocalRandom.current().nextBoolean();
+        }
+
+        @Override
+        public long nextLong() {
+            return ThreadLocalRandom.current().nextLong();
+        }
+    }
+}
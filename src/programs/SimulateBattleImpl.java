@@ -10,11 +10,68 @@ import java.util.*;
 public class SimulateBattleImpl implements SimulateBattle {
     final boolean USE_MAGIC = false;
 
+    // Сколько столкновений подряд без урона и без перемещений считаем тупиком. Только для подставленной модели хода: её урон
+    // округляется и может быть нулевым, а цель может быть недостижима, и если ни одна сторона не может ранить другую, битва иначе
+    // не кончилась бы никогда. Битвы на программах бойцов, как в игре, идут до конца, как и раньше
+    static final int STALLED_ROUNDS_LIMIT = 16;
+
     private PrintBattleLog printBattleLog;
 
+    // Режим без вывода: ни сводок по столкновениям, ни журнала ударов. Для массовых прогонов, где важен только итог
+    private boolean headless;
+
+    // Кто наносит удары: по умолчанию программы бойцов, как в игре
+    private AttackResolver attackResolver = AttackResolver.PROGRAM;
+
+    // Источник случайности для выбора стороны, начинающей столкновение. Засеянный источник делает битву воспроизводимой
+    private RandomSource random = RandomSource.threadLocal();
+
+    // Асинхронный журнал ударов. Если задан, удары пишутся в него, и игровой поток не ждёт вывода. Штатный журнал тогда вызывается
+    // не отсюда, а из потока-писателя, если журнал собран с приёмником AsyncBattleLog.printSink
+    private AsyncBattleLog battleLog;
+
+    // Двоичная запись битвы для последующего разбора. Если задана, в неё пишутся столкновения, удары, шаги и гибель бойцов
+    private BattleReplayWriter replayWriter;
+
+    // Геометрия поля, с которой открывается битва. Её видят поиск пути и выбор целей, вызванные в ходе битвы
+    private BattlefieldGeometry geometry = BattlefieldGeometry.DEFAULT;
+
+    public void setBattleLog(AsyncBattleLog battleLog) {
+        this.battleLog = battleLog;
+    }
+
+    public void setReplayWriter(BattleReplayWriter replayWriter) {
+        this.replayWriter = replayWriter;
+    }
+
+    public void setGeometry(BattlefieldGeometry geometry) {
+        this.geometry = geometry;
+    }
+
+    public void setHeadless(boolean headless) {
+        this.headless = headless;
+    }
+
+    public void setAttackResolver(AttackResolver attackResolver) {
+        this.attackResolver = attackResolver;
+    }
+
+    public void setRandom(RandomSource random) {
+        this.random = random;
+    }
+
+    // Зерно для следующей битвы: с тем же зерном и теми же армиями битва повторится ход в ход
+    public void setSeed(long seed) {
+        this.random = RandomSource.seeded(seed);
+    }
+
     @Override
     public void simulate(Army playerArmy, Army computerArmy) throws InterruptedException {
-        int daysCounter = 0;
+        simulateBattle(playerArmy, computerArmy);
+    }
+
+    // Симуляция битвы с возвратом итога
+    public BattleOutcome simulateBattle(Army playerArmy, Army computerArmy) throws InterruptedException {
         List<Unit> playerUnits = new ArrayList<>(playerArmy.getUnits());
         List<Unit> computerUnits = new ArrayList<>(computerArmy.getUnits());
 
@@ -28,59 +85,141 @@ public class SimulateBattleImpl implements SimulateBattle {
             });
         }
 
+        // Открываем контекст битвы: карта занятости поля и состояние бойцов в примитивных массивах строятся один раз
+        // и дальше обновляются по событиям
+        try (BattleContext context = BattleContext.open(playerUnits, computerUnits, geometry)) {
+            ArmyState state = context.state();
+            int players = context.playerCount();
+            int all = context.size();
+
+            // Запоминаем здоровье сторон до битвы, чтобы потом посчитать урон
+            long playerHealth = state.totalHealth(0, players);
+            long computerHealth = state.totalHealth(players, all);
+
+            if (replayWriter != null) {
+                context.setReplayWriter(replayWriter);
+                replayWriter.beginBattle(all);
+            }
+            int rounds = fight(context, playerUnits, computerUnits);
+
+            // Битва закончилась - сверяемся с бойцами ещё раз, итог считаем по массивам
+            for (int id = 0; id < all; id++) {
+                state.pull(id);
+            }
+            int playerSurvivors = state.aliveCount(0, players);
+            int computerSurvivors = state.aliveCount(players, all);
+            // Живые с обеих сторон остаются только после тупика - это ничья
+            BattleOutcome.Winner winner = playerSurvivors > 0 && computerSurvivors > 0 ? BattleOutcome.Winner.DRAW
+                    : playerSurvivors > 0 ? BattleOutcome.Winner.PLAYER
+                    : computerSurvivors > 0 ? BattleOutcome.Winner.COMPUTER : BattleOutcome.Winner.DRAW;
+            return new BattleOutcome(winner, rounds, playerSurvivors, computerSurvivors,
+                    playerHealth - state.totalHealth(0, players), computerHealth - state.totalHealth(players, all));
+        }
+    }
+
+    // Возвращает число столкновений
+    private int fight(BattleContext context, List<Unit> playerUnits, List<Unit> computerUnits) throws InterruptedException {
+        int daysCounter = 0;
+        int attacks = 0;
+        int stalled = 0;
+        ArmyState state = context.state();
+
+        // Очереди ходов сторон, отсортированные по наносимой мощи (более мощные ходят вперёд). Сортируются один раз на битву
+        TurnScheduler playerQueue = new TurnScheduler(context.state(), 0, context.playerCount());
+        TurnScheduler computerQueue = new TurnScheduler(context.state(), context.playerCount(), context.size());
+
         // Пока есть живые хоть по одну сторону конфликта
-        while (playerUnits.stream().anyMatch(Unit::isAlive) && computerUnits.stream().anyMatch(Unit::isAlive)) {
+        while (playerQueue.aliveCount() > 0 && computerQueue.aliveCount() > 0) {
+            if (stalled == STALLED_ROUNDS_LIMIT && attackResolver != AttackResolver.PROGRAM) {
+                if (!headless) {
+                    System.out.println("Ни одна из сторон не может нанести урон, битва остановлена");
+                }
+                break;
+            }
             daysCounter++;
-            System.out.println("Столкновение: " + daysCounter);
-
-            // Сортируем очереди ходов подразделения сторон, сортируя по наносимой мощи (более мощные ходят вперёд).
-            Queue<Unit> playerQueue = new LinkedList<>(playerArmy.getUnits().stream().filter(Unit::isAlive).sorted(Comparator.comparingInt(Unit::getBaseAttack).reversed()).toList());
-            Queue<Unit> computerQueue = new LinkedList<>(computerArmy.getUnits().stream().filter(Unit::isAlive).sorted(Comparator.comparingInt(Unit::getBaseAttack).reversed()).toList());
+            long healthBefore = state.totalHealth(0, context.size());
+            long movesBefore = context.moves();
+            if (!headless) {
+                System.out.println("Столкновение: " + daysCounter);
+            }
+            playerQueue.startRound();
+            computerQueue.startRound();
+            if (replayWriter != null) {
+                replayWriter.round(daysCounter);
+            }
 
             // Битва будет идти до тех пор, пока все бойцы не походят
-            while (!playerQueue.isEmpty() || !computerQueue.isEmpty()) {
+            while (playerQueue.hasNext() || computerQueue.hasNext()) {
 
                 // Каждое столкновение начинать будем случайно выбранная сторона
-                boolean order = Math.random() < 0.5;
-                Queue<Unit> sideOne = playerQueue;
-                Queue<Unit> sideTwo = computerQueue;
+                boolean order = random.nextBoolean();
                 if (order) {
-                    sideOne = computerQueue;
-                    sideTwo = playerQueue;
+                    attacks += attack(context, daysCounter, computerQueue, computerUnits, playerUnits);
+                    attacks += attack(context, daysCounter, playerQueue, playerUnits, computerUnits);
+                } else {
+                    attacks += attack(context, daysCounter, playerQueue, playerUnits, computerUnits);
+                    attacks += attack(context, daysCounter, computerQueue, computerUnits, playerUnits);
                 }
-                attack(sideOne, sideTwo);
-                attack(sideTwo, sideOne);
             }
 
-            System.out.println("Столкновение завершено. Считаем результаты");
-            System.out.printf("У игрока осталось бойцов: %d%n", playerUnits.stream().filter(Unit::isAlive).count());
-            System.out.printf("У компьютера осталось бойцов: %d%n", computerUnits.stream().filter(Unit::isAlive).count());
+            boolean progress = state.totalHealth(0, context.size()) != healthBefore || context.moves() != movesBefore;
+            stalled = progress ? 0 : stalled + 1;
+
+            if (!headless) {
+                System.out.println("Столкновение завершено. Считаем результаты");
+                System.out.printf("У игрока осталось бойцов: %d%n", playerQueue.aliveCount());
+                System.out.printf("У компьютера осталось бойцов: %d%n", computerQueue.aliveCount());
+            }
         }
 
-        System.out.println("Битва окончена!");
-        System.out.printf("Итог: %s!%n", playerUnits.stream().anyMatch(Unit::isAlive) ? "победой игрока" : computerUnits.stream().anyMatch(Unit::isAlive) ? "победой компьютера" : "ничьей");
+        if (!headless) {
+            System.out.println("Битва окончена!");
+            System.out.printf("Итог: %s!%n", playerQueue.aliveCount() > 0 && computerQueue.aliveCount() > 0 ? "ничьей"
+                    : playerQueue.aliveCount() > 0 ? "победой игрока" : computerQueue.aliveCount() > 0 ? "победой компьютера" : "ничьей");
+        }
+        if (BattleMetrics.ENABLED) {
+            BattleMetrics.onBattle(daysCounter, attacks);
+        }
+        return daysCounter;
     }
 
-    private void attack(Queue<Unit> sideOne, Queue<Unit> sideTwo) throws InterruptedException {
-        // Если некому ходить, то просто выходим
-        if (sideOne.isEmpty()) {
-            return;
+    // Возвращает 1, если боец сходил, и 0, если ходить было некому
+    private int attack(BattleContext context, int round, TurnScheduler side, List<Unit> allies, List<Unit> enemies) throws InterruptedException {
+        // Выбирается самый сильный боец. Если некому ходить, то просто выходим
+        int id = side.poll();
+        if (id < 0) {
+            return 0;
         }
-
-        // Выбирается самый сильный боец
-        Unit playerUnit = sideOne.poll();
-        if (playerUnit != null) {
-
-            // Который наносит удар по противнику
-            Unit target = playerUnit.getProgram().attack();
+        ArmyState state = context.state();
+        Unit playerUnit = context.unit(id);
+
+        // Который наносит удар по противнику, по пути к нему, возможно, сменив позицию. Ход программы - граница с игрой:
+        // после него забираем из Unit состояние атакующего и цели, остальное программа не трогает
+        int fromX = state.x[id];
+        int fromY = state.y[id];
+        Unit target = attackResolver.attack(playerUnit, allies, enemies, id < context.playerCount());
+        int targetId = context.idOf(target);
+        boolean targetWasAlive = targetId >= 0 && state.isAlive(targetId);
+        int hpDelta = targetId >= 0 ? context.observe(targetId) : 0;
+        if (replayWriter != null) {
+            replayWriter.attack(id, targetId, hpDelta);
+        }
+        if (battleLog != null) {
+            battleLog.publish(id, targetId, hpDelta, round);
+        } else if (!headless && this.printBattleLog != null) {
             this.printBattleLog.printBattleLog(playerUnit, target);
+        }
+        if (fromX != playerUnit.getxCoordinate() || fromY != playerUnit.getyCoordinate()) {
+            context.onUnitMoved(fromX, fromY, playerUnit);
+        }
 
-            // Если боец не промазал и противник помер
-            if (target != null && !target.isAlive()) {
-
-                // Противоборствующая сторона теряет убитого бойца
-                sideTwo.remove(target);
+        // Если боец не промазал и противник помер - его ячейка на поле освобождается, а очередь его стороны пропустит его по маске
+        if (targetWasAlive && !state.isAlive(targetId)) {
+            context.onUnitDied(target);
+            if (replayWriter != null) {
+                replayWriter.death(targetId);
             }
         }
+        return 1;
     }
 }
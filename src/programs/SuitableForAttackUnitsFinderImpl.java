@@ -7,61 +7,120 @@ import java.util.*;
 
 public class SuitableForAttackUnitsFinderImpl implements SuitableForAttackUnitsFinder {
 
+    // Маски строк по колонкам, свои у каждого потока: сначала маски живых бойцов колонок, затем маски прикрытых строк
+    private static final ThreadLocal<long[][]> MASKS = ThreadLocal.withInitial(() -> new long[1][0]);
+
+    // Геометрия поля вне битвы, из неё берётся число строк. Внутри битвы - геометрия битвы
+    private BattlefieldGeometry geometry = BattlefieldGeometry.DEFAULT;
+
+    public void setGeometry(BattlefieldGeometry geometry) {
+        this.geometry = geometry;
+    }
+
     @Override
+    // Внутри битвы цели берутся из индекса, который симулятор поддерживает по событиям гибели бойцов, - это O(1) и без копирования.
+    // В этом случае возвращается представление только для чтения: изменить его нельзя, а содержимое следует за битвой, поэтому
+    // тому, кто хочет сохранить или поправить список, нужно его скопировать. Вне битвы цели считаются заново в новый список
     public List<Unit> getSuitableUnits(List<List<Unit>> unitsByColumn, boolean humanAttack) {
+        List<Unit> view = exposedUnits(unitsByColumn, humanAttack);
+        if (view != null) {
+            return view;
+        }
         List<Unit> suitableUnits = new ArrayList<>();
+        getSuitableUnits(unitsByColumn, humanAttack, suitableUnits);
+        return suitableUnits;
+    }
+
+    // Представление открытых бойцов из индекса битвы или null, если битвы нет или индекс к этим колонкам неприменим
+    private static List<Unit> exposedUnits(List<List<Unit>> unitsByColumn, boolean humanAttack) {
+        if (BattleMetrics.ENABLED) {
+            BattleMetrics.onSuitableUnits();
+        }
+        BattleContext context = BattleContext.current();
+        if (context == null) {
+            return null;
+        }
+        ExposedUnitsIndex index = context.exposedUnits(unitsByColumn);
+        return index != null ? index.view(humanAttack) : null;
+    }
+
+    // То же самое, но без выделения памяти: цели дописываются в переданный список, который вызывающий может переиспользовать.
+    // Для каждой колонки держим маску живых бойцов по строкам (бит на строку, по long на каждые 64 строки), тогда прикрытие бойца -
+    // это один бит в объединении масок колонок перед ним. Сложность O(u + c * r / 64), где u - число бойцов, c - колонок, r - строк.
+    // Внутри битвы строка и жизнь бойца этой битвы берутся из её состояния ArmyState, вне битвы - из самого Unit
+    public void getSuitableUnits(List<List<Unit>> unitsByColumn, boolean humanAttack, List<Unit> suitableUnits) {
+        BattleContext context = BattleContext.current();
+        int rows = (context != null ? context.geometry() : geometry).getHeight();
+        int columns = unitsByColumn.size();
+        if (columns == 0) {
+            return;
+        }
+        int words = (rows + 63) >>> 6;
+        long[] masks = masks(2 * columns * words);
+        int covered = columns * words;
 
-        // Создаём новый список колонок, чтобы случайно не изменить оригинальный порядок
-        List<List<Unit>> columns = new ArrayList<>(unitsByColumn);
+        // Маски живых бойцов по колонкам в порядке от тыла к фронту. Если это ход компьютера, то колонки читаем в обратном порядке
+        for (int i = 0; i < columns; i++) {
+            aliveMask(context, unitsByColumn.get(column(i, columns, humanAttack)), rows, masks, i * words, words);
+        }
 
-        // Если это ход компьютера, то меняем крайние колонки местами
-        if (!humanAttack) {
-            List<Unit> tempColumn = columns.get(0);
-            columns.set(0, columns.get(2));
-            columns.set(2, tempColumn);
+        // Строки, прикрытые спереди: для каждой колонки - объединение масок всех впереди стоящих, фронтовую не прикрывает никто
+        for (int w = 0; w < words; w++) {
+            masks[covered + (columns - 1) * words + w] = 0;
+        }
+        for (int i = columns - 2; i >= 0; i--) {
+            for (int w = 0; w < words; w++) {
+                masks[covered + i * words + w] = masks[covered + (i + 1) * words + w] | masks[(i + 1) * words + w];
+            }
         }
 
-        // Составим карту живых бойцов, чтобы не перебирать весь список каждый раз
-        Map<Integer, Unit> map = new HashMap<>();
-        for (int i = 0; i < 3; i++) {
-            for (Unit unit : columns.get(i)) {
+        for (int i = 0; i < columns; i++) {
+            collect(context, unitsByColumn.get(column(i, columns, humanAttack)), rows, masks, covered + i * words, suitableUnits);
+        }
+    }
 
-                // Нас интересуют только живые бойцы
-                if (unit.isAlive()) {
+    // Номер исходной колонки для i-й по счёту от тыла
+    private static int column(int i, int columns, boolean humanAttack) {
+        return humanAttack ? i : columns - 1 - i;
+    }
 
-                    // Чтобы уложить две координаты в один int, придумаем простенький хеш, чтобы значения не пересекались. Для нашего диапазона вполне подойдёт
-                    int hash = i * 2 + unit.getyCoordinate() * 100;
-                    map.put(hash, unit);
-                }
+    private static long[] masks(int length) {
+        long[][] holder = MASKS.get();
+        if (holder[0].length < length) {
+            holder[0] = new long[length];
+        }
+        return holder[0];
+    }
+
+    // Маска строк, в которых в колонке стоит живой боец. Бойцы за пределами поля ни прикрывать, ни быть прикрытыми не могут
+    private static void aliveMask(BattleContext context, List<Unit> column, int rows, long[] masks, int offset, int words) {
+        for (int w = 0; w < words; w++) {
+            masks[offset + w] = 0;
+        }
+        for (int i = 0, n = column.size(); i < n; i++) {
+            Unit unit = column.get(i);
+            int id = context != null ? context.idOf(unit) : -1;
+            int y = id >= 0 ? context.state().y[id] : unit.getyCoordinate();
+            if (isAlive(context, id, unit) && y >= 0 && y < rows) {
+                masks[offset + (y >>> 6)] |= 1L << y;
             }
         }
+    }
 
-        // Перебирать будем по колонкам, от тыльной колонки к фронтовой
-        for (int i = 0; i < 3; i++) {
-            for (Unit unit : columns.get(i)) {
-
-                // Мёртвые не в счёт
-                if (!unit.isAlive()) {
-                    continue;
-                }
-
-                // Получаем бойца и проверяем, нет ли кого спереди. Проверяем только по координате x, то есть максимум две проверки на бойца
-                boolean covered = false;
-                for (int j = i + 1; j < 3; j++) {
-                    int hash = j * 2 + unit.getyCoordinate() * 100;
-                    if (map.containsKey(hash)) {
-                        covered = true;
-                        break;
-                    }
-                }
-
-                // И если не прикрывает, то он потенциальная цель
-                if (!covered) {
-                    suitableUnits.add(unit);
-                }
+    // Живые бойцы колонки, строки которых не прикрыты спереди, - потенциальные цели
+    private static void collect(BattleContext context, List<Unit> column, int rows, long[] masks, int offset, List<Unit> suitableUnits) {
+        for (int i = 0, n = column.size(); i < n; i++) {
+            Unit unit = column.get(i);
+            int id = context != null ? context.idOf(unit) : -1;
+            int y = id >= 0 ? context.state().y[id] : unit.getyCoordinate();
+            if (isAlive(context, id, unit) && (y < 0 || y >= rows || (masks[offset + (y >>> 6)] & (1L << y)) == 0)) {
+                suitableUnits.add(unit);
             }
         }
+    }
 
-        return suitableUnits;
+    // Жив ли боец: боец битвы (id >= 0) - по её состоянию, иначе по самому Unit
+    private static boolean isAlive(BattleContext context, int id, Unit unit) {
+        return id >= 0 ? context.state().isAlive(id) : unit.isAlive();
     }
 }
@@ -0,0 +1,331 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Круговой турнир: каждая армия играет с каждой по games битв, стороны в паре чередуются.
+// Армии не хранятся: состав каждой армии (сколько бойцов какого типа) подбирается один раз на турнир и хранится как O(армий * типов)
+// чисел, а сама армия с номером i каждый раз заново расставляется через GeneratePresetImpl по своему зерну. Пары раздаются ограниченному пулу потоков, и в работе
+// одновременно не больше нескольких пар на поток. Итоги пар применяются к агрегаторам строго в порядке пар - пары, которые
+// досчитались раньше соседей, ждут в небольшом буфере, - поэтому рейтинг не зависит от числа потоков, а память не растёт с числом битв.
+// Состояние турнира - номер следующей пары и состояние агрегаторов; оно периодически пишется в контрольную точку,
+// и турнир с той же настройкой и той же контрольной точкой продолжается с места остановки
+public class Tournament {
+    public static final int CHECKPOINT_MAGIC = 0x544E5254; // "TRNT"
+    public static final int CHECKPOINT_VERSION = 1;
+
+    // Сколько пар на поток может быть в работе одновременно
+    private static final int PAIRINGS_IN_FLIGHT_PER_THREAD = 4;
+
+    private final List<Unit> unitList;
+    private final int[] budgets;
+    private final long seed;
+    private final EloRatings elo;
+    private final WinMatrix winMatrix;
+    private final List<TournamentAggregator> aggregators = new ArrayList<>();
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int games = 2;
+    private GeneratePresetImpl.Method method = GeneratePresetImpl.Method.SIMPLE;
+    private Path checkpoint;
+    private long checkpointEvery = 1000;
+
+    // Составы армий: compositions[i][type] - число бойцов типа type в армии i. Подбираются при первой надобности
+    private int[][] compositions;
+
+    // Сколько пар уже учтено в агрегаторах, и поднята ли контрольная точка
+    private long played;
+    private boolean restored;
+
+    // Армий в турнире столько, сколько бюджетов: армия i собирается на budgets[i]
+    public Tournament(List<Unit> unitList, int[] budgets, long seed) {
+        this.unitList = List.copyOf(unitList);
+        this.budgets = budgets.clone();
+        this.seed = seed;
+        this.elo = new EloRatings(budgets.length);
+        this.winMatrix = new WinMatrix(budgets.length);
+        aggregators.add(elo);
+        aggregators.add(winMatrix);
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    // Битв на пару армий, стороны чередуются: в чётных битвах за игрока первая армия пары, в нечётных - вторая
+    public void setGames(int games) {
+        this.games = Math.max(1, games);
+    }
+
+    public synchronized void setMethod(GeneratePresetImpl.Method method) {
+        this.method = method;
+        this.compositions = null;
+    }
+
+    // Контрольная точка: пишется каждые every пар, при остановке и в конце турнира. Если файл уже есть, турнир продолжается с него
+    public void setCheckpoint(Path checkpoint, long every) {
+        this.checkpoint = checkpoint;
+        this.checkpointEvery = Math.max(1, every);
+    }
+
+    // Дополнительный агрегатор. Добавлять до первого запуска, порядок агрегаторов - часть формата контрольной точки
+    public void addAggregator(TournamentAggregator aggregator) {
+        aggregators.add(aggregator);
+    }
+
+    public EloRatings getElo() {
+        return elo;
+    }
+
+    public WinMatrix getWinMatrix() {
+        return winMatrix;
+    }
+
+    public int getArmies() {
+        return budgets.length;
+    }
+
+    public long getPairings() {
+        long n = budgets.length;
+        return n * (n - 1) / 2;
+    }
+
+    public long getPlayedPairings() {
+        return played;
+    }
+
+    public boolean isFinished() {
+        return played == getPairings();
+    }
+
+    // Доигрываем турнир до конца. Прерывание потока останавливает турнир, сохранив контрольную точку
+    public void run() throws IOException, InterruptedException {
+        run(Long.MAX_VALUE);
+    }
+
+    // Играем не больше maxPairings пар и останавливаемся. Возвращает true, если турнир закончен
+    public boolean run(long maxPairings) throws IOException, InterruptedException {
+        restore();
+        // Складываем только с остатком турнира: played + maxPairings при run() (Long.MAX_VALUE) переполнился бы
+        long limit = played + Math.max(0, Math.min(maxPairings, getPairings() - played));
+        int window = threads * PAIRINGS_IN_FLIGHT_PER_THREAD;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CompletionService<Pairing> completion = new ExecutorCompletionService<>(executor);
+            Map<Long, Pairing> finished = new HashMap<>();
+            long submitted = played;
+            while (played < limit) {
+                while (submitted < limit && submitted - played < window) {
+                    long index = submitted++;
+                    completion.submit(() -> play(index));
+                }
+
+                Pairing pairing = take(completion);
+                finished.put(pairing.index, pairing);
+
+                // Применяем всё, что досчиталось подряд от следующей по порядку пары
+                for (Pairing next = finished.remove(played); next != null; next = finished.remove(played)) {
+                    apply(next);
+                    played++;
+                    if (checkpoint != null && played % checkpointEvery == 0) {
+                        save();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            if (checkpoint != null) {
+                save();
+            }
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+        if (checkpoint != null) {
+            save();
+        }
+        return isFinished();
+    }
+
+    // Армия турнира с номером army. Всегда одна и та же: состав подобран по её бюджету, зерно расстановки зависит только от номера
+    public Army army(int army) {
+        int[][] compositions = compositions();
+        GeneratePresetImpl generator = generator();
+        generator.setSeed(BattleMonteCarloRunner.trialSeed(seed, -1 - (long) army));
+        return generator.deploy(unitList, compositions[army]);
+    }
+
+    // Составы всех армий. Подбор - рюкзак или "хапуга" по бюджету - идёт по разу на армию, а не на каждую сборку армии:
+    // при сотнях разных бюджетов общий кеш составов GeneratePresetImpl вытеснял бы их быстрее, чем они снова понадобятся
+    private synchronized int[][] compositions() {
+        if (compositions == null) {
+            GeneratePresetImpl generator = generator();
+            int[][] counts = new int[budgets.length][];
+            for (int army = 0; army < budgets.length; army++) {
+                counts[army] = generator.counts(unitList, budgets[army]);
+            }
+            compositions = counts;
+        }
+        return compositions;
+    }
+
+    private GeneratePresetImpl generator() {
+        GeneratePresetImpl generator = new GeneratePresetImpl();
+        generator.setHeadless(true);
+        generator.setMethod(method);
+        return generator;
+    }
+
+    // Номера армий пары index: пары идут по порядку (0, 1), (0, 2), ..., (0, n - 1), (1, 2), ...
+    int[] pairing(long index) {
+        int n = budgets.length;
+        int first = 0;
+        long rest = index;
+        while (rest >= n - 1 - first) {
+            rest -= n - 1 - first;
+            first++;
+        }
+        return new int[]{first, first + 1 + (int) rest};
+    }
+
+    // Пара целиком: обе армии собираются заново, армия за игрока переносится на противоположный край поля
+    private Pairing play(long index) throws InterruptedException {
+        int[] armies = pairing(index);
+        Army first = army(armies[0]);
+        Army second = army(armies[1]);
+        BattleOutcome[] outcomes = new BattleOutcome[games];
+        for (int game = 0; game < games; game++) {
+            boolean firstPlays = (game & 1) == 0;
+            Army player = BattleMonteCarloRunner.asPlayer(firstPlays ? first : second);
+            Army computer = firstPlays ? second : first;
+            outcomes[game] = BattleMonteCarloRunner.runTrial(player, computer, seed, index * games + game);
+        }
+        return new Pairing(index, armies[0], armies[1], outcomes);
+    }
+
+    private void apply(Pairing pairing) {
+        for (int game = 0; game < pairing.outcomes.length; game++) {
+            boolean firstPlays = (game & 1) == 0;
+            int player = firstPlays ? pairing.first : pairing.second;
+            int computer = firstPlays ? pairing.second : pairing.first;
+            for (TournamentAggregator aggregator : aggregators) {
+                aggregator.accept(player, computer, pairing.outcomes[game]);
+            }
+        }
+    }
+
+    private static Pairing take(CompletionService<Pairing> completion) throws InterruptedException {
+        try {
+            return completion.take().get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Пара турнира не доиграна", e.getCause());
+        }
+    }
+
+    // Отпечаток настройки турнира: контрольная точка подходит только к турниру с тем же каталогом, бюджетами, зерном и числом битв
+    private long fingerprint() {
+        long hash = PresetCache.fingerprint(unitList);
+        hash = 31 * hash + seed;
+        hash = 31 * hash + games;
+        hash = 31 * hash + method.ordinal();
+        for (int budget : budgets) {
+            hash = 31 * hash + budget;
+        }
+        return hash;
+    }
+
+    // Контрольная точка: заголовок (магическое число, версия, отпечаток настройки, число армий, число сыгранных пар),
+    // затем состояние агрегаторов по порядку. Пишем во временный файл и подменяем им старый, чтобы сбой посреди записи не испортил точку
+    private void save() throws IOException {
+        Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeLong(fingerprint());
+            out.writeInt(budgets.length);
+            out.writeLong(played);
+            for (TournamentAggregator aggregator : aggregators) {
+                aggregator.write(out);
+            }
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Поднимаем контрольную точку один раз, перед первым запуском. Агрегаторы читают своё состояние на место, поэтому сначала
+    // снимаем с них копию: если точка битая и чтение какого-то агрегатора упало, все они возвращаются к состоянию до попытки.
+    // Неудачная попытка не считается подъёмом - иначе следующий запуск начал бы турнир с нуля и затёр точку
+    private void restore() throws IOException {
+        if (restored) {
+            return;
+        }
+        if (checkpoint == null || !Files.exists(checkpoint)) {
+            restored = true;
+            return;
+        }
+        ByteArrayOutputStream backup = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(backup)) {
+            for (TournamentAggregator aggregator : aggregators) {
+                aggregator.write(out);
+            }
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION) {
+                throw new IOException("Файл не является контрольной точкой турнира или записан другой версией формата");
+            }
+            if (in.readLong() != fingerprint() || in.readInt() != budgets.length) {
+                throw new IOException("Контрольная точка записана другим турниром");
+            }
+            long stored = in.readLong();
+            try {
+                for (TournamentAggregator aggregator : aggregators) {
+                    aggregator.read(in);
+                }
+            } catch (IOException | RuntimeException e) {
+                try (DataInputStream previous = new DataInputStream(new ByteArrayInputStream(backup.toByteArray()))) {
+                    for (TournamentAggregator aggregator : aggregators) {
+                        aggregator.read(previous);
+                    }
+                }
+                throw e;
+            }
+            played = stored;
+            restored = true;
+        }
+    }
+
+    // Итоги одной пары: номера армий и битвы в порядке их номеров
+    private static final class Pairing {
+        private final long index;
+        private final int first;
+        private final int second;
+        private final BattleOutcome[] outcomes;
+
+        Pairing(long index, int first, int second, BattleOutcome[] outcomes) {
+            this.index = index;
+            this.first = first;
+            this.second = second;
+            this.outcomes = outcomes;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package programs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Потребитель итогов турнира. Итоги приходят по одному, в порядке пар (и битв внутри пары), из одного потока,
+// так что агрегатору не нужны ни блокировки, ни память под все битвы. Своё состояние он умеет сохранить в контрольную точку и поднять из неё
+public interface TournamentAggregator {
+
+    // Итог одной битвы: армия с номером player играла за игрока, армия computer - за компьютер
+    void accept(int player, int computer, BattleOutcome outcome);
+
+    void write(DataOutput out) throws IOException;
+
+    void read(DataInput in) throws IOException;
+}
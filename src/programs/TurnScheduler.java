@@ -0,0 +1,49 @@
+package programs;
+
+// Очередь ходов одной стороны. Атака бойцов за битву не меняется, поэтому порядок (более мощные ходят вперёд) сортируется один раз,
+// а не на каждое столкновение. Очередь хранит номера бойцов в битве и смотрит на их живость в маске состояния битвы:
+// павшие из массива не удаляются, а пропускаются при выдаче хода, так что выдача хода стоит O(1), а между столкновениями
+// ничего не выделяется. Сторона - это бойцы с номерами [from, to)
+final class TurnScheduler {
+    private final ArmyState state;
+    private final int from;
+    private final int to;
+    private final int[] order;
+    private int cursor;
+
+    TurnScheduler(ArmyState state, int from, int to) {
+        this.state = state;
+        this.from = from;
+        this.to = to;
+        this.order = state.byAttackDescending(from, to);
+        this.cursor = order.length;
+    }
+
+    // Новое столкновение: ходить будут все, кто жив
+    void startRound() {
+        cursor = 0;
+    }
+
+    // Есть ли ещё кому ходить в этом столкновении
+    boolean hasNext() {
+        skipDead();
+        return cursor < order.length;
+    }
+
+    // Номер следующего по силе живого бойца, ещё не ходившего в этом столкновении, либо -1
+    int poll() {
+        skipDead();
+        return cursor < order.length ? order[cursor++] : -1;
+    }
+
+    // Живых бойцов стороны, по маске состояния: O(n / 64)
+    int aliveCount() {
+        return state.aliveCount(from, to);
+    }
+
+    private void skipDead() {
+        while (cursor < order.length && !state.isAlive(order[cursor])) {
+            cursor++;
+        }
+    }
+}
@@ -7,258 +7,138 @@ import com.battle.heroes.army.programs.UnitTargetPathFinder;
 import java.util.*;
 
 public class UnitTargetPathFinderImpl implements UnitTargetPathFinder {
-    private static final int WIDTH = 27; // Ширина игрового поля
-    private static final int HEIGHT = 21; // Высота игрового поля
+    // Геометрия поля вне битвы. Внутри битвы действует геометрия, с которой битва открыта.
+    // Движок поиска пути у геометрии общий, рабочие буферы (в том числе карта препятствий) у него свои в каждом потоке
+    private BattlefieldGeometry geometry = BattlefieldGeometry.DEFAULT;
 
-    private static String hash(int x, int y) {
-        return String.valueOf(x) + "|" + String.valueOf(y);
+    public void setGeometry(BattlefieldGeometry geometry) {
+        this.geometry = geometry;
     }
 
     @Override
     // Метод получения кратчайшего пути.
-    // Сложность алгоритма O(n log n), где n = WIDTH * HEIGHT (createVertexMap = O(1), compute = O(n log n), getEdges = O(n))
+    // Сложность алгоритма O(u + n log n), где u - число бойцов, n = ширина * высота поля (createObstacleMap = O(u), поиск A* = O(n log n) в худшем случае).
+    // Внутри битвы карта занятости уже поддерживается симулятором, и тогда бойцов не перебираем вовсе. На больших полях вместо A* - поиск прыжками
     public List<Edge> getTargetPath(Unit sourceUnit, Unit targetUnit, List<Unit> allUnits) {
-        // Создаём граф возможных перемещений с учётом расположения бойцов
-        Map<String, Vertex> vertexMap = createVertexMap(allUnits, targetUnit);
-
-        // Инициируем класс поиска пути по алгоритму Дейкстры
-        Dijkstra dijkstra = new Dijkstra();
-
-        // Получаем ячейку атакующего
-        Vertex sourceVertex = vertexMap.get(hash(sourceUnit.getxCoordinate(), sourceUnit.getyCoordinate()));
-
-        // Получаем ячейку атакуемого
-        Vertex targetVertex = vertexMap.get(hash(targetUnit.getxCoordinate(), targetUnit.getyCoordinate()));
-
-        // Ищем кратчайший путь
-        dijkstra.compute(sourceVertex);
-
-        // Формируем шаги полученного пути и возвращаем их
-        return dijkstra.getEdges(targetVertex);
-    }
-
-    // Метод генерации карты возможных перемещений. Из карты пути исключаются ячейки с живыми бойцами (кроме цели - она остаётся достижимой)
-    // Ну а чтобы бойцы не шатались по карте словно пьяные, шатаясь из стороны в сторону (как, собственно, они и шатаются в исходном примере),
-    // реализуем систему весов, реализующее правило, что гипотенуза короче двух катетов. Ходить через своих бойцов, кстати, тоже запрещено
-    private Map<String, Vertex> createVertexMap(List<Unit> allUnits, Unit target) {
-
-        // Сначала сформируем
-        Map<String, Unit> unitMap = new HashMap<>();
-        for (Unit unit : allUnits) {
-            unitMap.put(hash(unit.getxCoordinate(), unit.getyCoordinate()), unit);
-        }
-        Map<String, Vertex> vertexMap = new HashMap<>();
-        String targetHash = hash(target.getxCoordinate(), target.getyCoordinate());
-        for (int x = 0; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                Vertex current = vertexMap.getOrDefault(hash(x, y), new Vertex(x, y));
-                vertexMap.put(hash(x, y), current);
-
-                // Если в текущей ячейке есть боец, он жив, но не является целью, то у данной ячейки не будет соседей
-                if (unitMap.get(hash(x, y - 1)) != null && !hash(x, y).equals(targetHash) && unitMap.get(hash(x, y - 1)).isAlive()) {
-                    continue;
-                }
-
-                // Здесь и далее, если соседняя ячейка находится по диагонали, то сложность пути до неё выставляем в 7, а если по прямой, то сложность выставляем в 5
-
-                // Если вверху есть ячейка, не содержащая живого бойца, кроме цели, добавляем её как соседнюю
-                if (y > 0 && (hash(x, y - 1).equals(targetHash) || unitMap.get(hash(x, y - 1)) == null || !unitMap.get(hash(x, y - 1)).isAlive())) {
-                    Vertex up = vertexMap.getOrDefault(hash(x, y - 1), new Vertex(x, y - 1));
-                    current.addNeighbor(new VertexEdge(5, current, up));
-                    vertexMap.put(hash(x, y - 1), up);
-                }
-
-                // Если слева есть ячейка, не содержащая живого бойца, кроме цели, добавляем её как соседнюю
-                if (x > 0 && (hash(x - 1, y).equals(targetHash) || unitMap.get(hash(x - 1, y)) == null || !unitMap.get(hash(x - 1, y)).isAlive())) {
-                    Vertex left = vertexMap.getOrDefault(hash(x - 1, y), new Vertex(x - 1, y));
-                    current.addNeighbor(new VertexEdge(5, current, left));
-                    vertexMap.put(hash(x - 1, y), left);
-                }
-
-                // Если слева сверху есть ячейка, не содержащая живого бойца, кроме цели, добавляем её как соседнюю
-                if (x > 0 && y > 0 && (hash(x - 1, y - 1).equals(targetHash) || unitMap.get(hash(x - 1, y - 1)) == null || !unitMap.get(hash(x - 1, y - 1)).isAlive())) {
-                    Vertex upLeft = vertexMap.getOrDefault(hash(x - 1, y - 1), new Vertex(x - 1, y - 1));
-                    current.addNeighbor(new VertexEdge(7, current, upLeft));
-                    vertexMap.put(hash(x - 1, y - 1), upLeft);
-                }
-
-                // Если справа сверху есть ячейка, не содержащая живого бойца, кроме цели, добавляем её как соседнюю
-                if (x != WIDTH - 1 && y > 0 && (hash(x + 1, y - 1).equals(targetHash) || unitMap.get(hash(x + 1, y - 1)) == null || !unitMap.get(hash(x + 1, y - 1)).isAlive())) {
-                    Vertex upRight = vertexMap.getOrDefault(hash(x + 1, y - 1), new Vertex(x + 1, y - 1));
-                    current.addNeighbor(new VertexEdge(7, current, upRight));
-                    vertexMap.put(hash(x + 1, y - 1), upRight);
-                }
+        BattleContext context = BattleContext.current();
+        BattlefieldGeometry geometry = context != null ? context.geometry() : this.geometry;
+        GridPathEngine engine = geometry.engine();
+        long started = BattleMetrics.ENABLED ? System.nanoTime() : 0;
+        long expanded = BattleMetrics.ENABLED ? engine.expanded() : 0;
+
+        // Если к этой цели внутри битвы уже идут другие, спускаемся по общему полю расстояний
+        List<Edge> path = null;
+        if (context != null) {
+            path = context.flowFields().findPath(sourceUnit.getxCoordinate(), sourceUnit.getyCoordinate(),
+                    targetUnit.getxCoordinate(), targetUnit.getyCoordinate());
+        }
+
+        if (path == null) {
+            // Отмечаем ячейки, занятые живыми бойцами
+            long[] obstacles = obstacleMap(context, engine, allUnits);
+
+            // Ищем кратчайший путь от атакующего до атакуемого. Если пути нет, получим пустой список
+            if (geometry.getPathStrategy() == BattlefieldGeometry.PathStrategy.JUMP_POINT) {
+                path = engine.findJumpPath(sourceUnit.getxCoordinate(), sourceUnit.getyCoordinate(),
+                        targetUnit.getxCoordinate(), targetUnit.getyCoordinate(), obstacles);
+            } else {
+                path = engine.findPath(sourceUnit.getxCoordinate(), sourceUnit.getyCoordinate(),
+                        targetUnit.getxCoordinate(), targetUnit.getyCoordinate(), obstacles);
             }
         }
 
-        // Возвращаем карту возможных перемещений
-        return vertexMap;
-
-    }
-
-    // Класс расчёта пути по алгоритму Дейкстры
-    class Dijkstra {
-
-        // Очередь вершин
-        private final PriorityQueue<Vertex> queue;
-
-        public Dijkstra() {
-            this.queue = new PriorityQueue<>();
+        if (BattleMetrics.ENABLED) {
+            BattleMetrics.onPathQuery(System.nanoTime() - started, engine.expanded() - expanded);
         }
+        return path;
+    }
 
-        // Метод поиска пути
-        public void compute(Vertex source) {
-            // До текущей ячейки ходить не нужно, добавляем её в очередь
-            source.setDistance(0);
-            queue.add(source);
-
-            // И, пока очередь не пуста
-            while (!queue.isEmpty()) {
-
-                // Получаем текущую ячейку пути и перебираем всех её соседей
-                Vertex curr = queue.poll();
-                for (VertexEdge e : curr.getNeighbors()) {
-
-                    // Получаем ячейку текущего соседа и сложность пути
-                    Vertex end = e.getEnd();
-                    double w = e.getWeight();
-
-                    // Если мы ещё не посещали его
-                    if (!end.isVisited()) {
-
-                        // Проверяем, если данный путь короче существующего (а он, по умолчанию равен почти бесконечности)
-                        if (curr.getDistance() + w < end.getDistance()) {
-
-                            // Будем считать текущий путь эталонным и сохраним его
-                            end.setDistance(curr.getDistance() + w);
-
-                            // Перемещаем ячейку в конец
-                            queue.remove(end);
-                            queue.add(end);
+    // Пакетный метод: одним поиском от атакующего находим расстояния и пути сразу до всех достижимых целей.
+    // Результат отсортирован по возрастанию расстояния, недостижимые и мёртвые цели в него не попадают
+    public List<TargetPath> getTargetPaths(Unit sourceUnit, List<Unit> targetUnits, List<Unit> allUnits) {
+        return getTargetPaths(sourceUnit, targetUnits, allUnits, Integer.MAX_VALUE);
+    }
 
-                            // И сохраняем в ней текущую ячейку, чтобы потом можно было восстановить путь, откуда пришли
-                            end.setPrevious(curr);
-                        }
-                    }
-                }
+    // То же самое, но только до limit ближайших целей: поиск останавливается, как только они найдены.
+    // Сложность O(n log n), где n = ширина * высота поля, вне зависимости от числа целей - вместо отдельного поиска на каждую цель
+    public List<TargetPath> getTargetPaths(Unit sourceUnit, List<Unit> targetUnits, List<Unit> allUnits, int limit) {
+        BattleContext context = BattleContext.current();
+        GridPathEngine engine = (context != null ? context.geometry() : geometry).engine();
+        long started = BattleMetrics.ENABLED ? System.nanoTime() : 0;
+        long expanded = BattleMetrics.ENABLED ? engine.expanded() : 0;
+        long[] obstacles = obstacleMap(context, engine, allUnits);
+
+        // Больше, чем ячеек на поле, целей быть не может
+        int[] targetCells = engine.targetBuffer();
+        int[] reached = engine.reachedBuffer();
+
+        // Раскладываем живые цели по ячейкам. Если на одну ячейку претендуют несколько целей, учитывается первая
+        int count = Math.min(targetUnits.size(), targetCells.length);
+        for (int i = 0; i < count; i++) {
+            Unit target = targetUnits.get(i);
+            int x = target.getxCoordinate();
+            int y = target.getyCoordinate();
+            targetCells[i] = target.isAlive() && engine.inside(x, y) ? engine.cell(x, y) : -1;
+        }
+
+        int found = engine.findNearest(sourceUnit.getxCoordinate(), sourceUnit.getyCoordinate(),
+                targetCells, count, limit, obstacles, reached);
+        List<TargetPath> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            int cell = targetCells[reached[i]];
+            result.add(new TargetPath(targetUnits.get(reached[i]), engine.distanceTo(cell), engine.pathTo(cell)));
+        }
+        if (BattleMetrics.ENABLED) {
+            BattleMetrics.onPathQuery(System.nanoTime() - started, engine.expanded() - expanded);
+        }
+        return result;
+    }
 
-                // Отмечаем, что данная ячейка уже посещалась
-                curr.setVisited(true);
-            }
+    // Карта препятствий текущей битвы, если она есть, иначе собираем её по списку бойцов
+    private static long[] obstacleMap(BattleContext context, GridPathEngine engine, List<Unit> allUnits) {
+        if (context != null) {
+            return context.grid().bits();
         }
+        return createObstacleMap(engine, allUnits);
+    }
 
-        // Метод получения путь от начальной ячейки к конечной в формате пригодном для программы
-        public List<Edge> getEdges(Vertex end) {
-            List<Edge> path = new ArrayList<>();
-
-            // Пока у ячейки есть соседняя, откуда мы в неё пришли
-            while (end.getPrevious() != null) {
-
-                // Добавляем эту ячейку в путь и делаем её текущей
-                path.add(end.getEdge());
-                end = end.getPrevious();
+    // Метод генерации карты препятствий. Вместо графа со всеми вершинами и рёбрами достаточно одного бита на ячейку:
+    // ячейка с живым бойцом непроходима (цель движок обрабатывает сам - она остаётся достижимой). Ходить через своих бойцов, кстати, тоже запрещено
+    private static long[] createObstacleMap(GridPathEngine engine, List<Unit> allUnits) {
+        long[] obstacles = engine.obstacleBuffer();
+        Arrays.fill(obstacles, 0L);
+        for (Unit unit : allUnits) {
+            int x = unit.getxCoordinate();
+            int y = unit.getyCoordinate();
+            if (unit.isAlive() && engine.inside(x, y)) {
+                GridPathEngine.set(obstacles, engine.cell(x, y));
             }
-
-            // Не забываем добавить исходную ячейку
-            path.add(end.getEdge());
-
-            // Поскольку мы не раки, чтобы пятиться назад, разворачиваем путь на 180 градусов. Как это... Пусть лучше путь прогнётся под нас :)
-            Collections.reverse(path);
-
-            return path;
         }
+        return obstacles;
     }
 
-    // Класс вершин
-    class Vertex implements Comparable<Vertex> {
-        int coordX;
-        int coordY;
-        boolean visited;
-        List<VertexEdge> neighbors;
-        double distance;
-        Vertex previous;
-
-        public Vertex(int coordX, int coordY) {
-            this.coordX = coordX;
-            this.coordY = coordY;
-            this.neighbors = new ArrayList<>();
-            this.previous = null;
-
-            // Изначально расстояние до всех точек бесконечно большое
-            this.distance = Double.MAX_VALUE;
-        }
-
-        // Метод добавления соседа, работает в обе стороны
-        public void addNeighbor(VertexEdge neighborEdge) {
-            this.neighbors.add(neighborEdge);
-            Vertex neighbor = neighborEdge.getEnd();
-            neighbor.neighbors.add(new VertexEdge(5, neighbor, this));
-        }
-
-        // Далее всякие геттеры и сеттеры
-
-        public Edge getEdge() {
-            return new Edge(this.coordX, this.coordY);
-        }
-
-        public boolean isVisited() {
-            return this.visited;
-        }
-
-        public void setVisited(boolean visited) {
-            this.visited = visited;
-        }
-
-        public List<VertexEdge> getNeighbors() {
-            return this.neighbors;
-        }
-
-        public double getDistance() {
-            return this.distance;
-        }
+    // Результат пакетного поиска: цель, сложность пути до неё (в тех же весах 5/7) и сам путь
+    public static class TargetPath {
+        private final Unit target;
+        private final int distance;
+        private final List<Edge> path;
 
-        public void setDistance(double distance) {
+        TargetPath(Unit target, int distance, List<Edge> path) {
+            this.target = target;
             this.distance = distance;
+            this.path = path;
         }
 
-        public Vertex getPrevious() {
-            return previous;
+        public Unit getTarget() {
+            return target;
         }
 
-        public void setPrevious(Vertex previous) {
-            this.previous = previous;
+        public int getDistance() {
+            return distance;
         }
 
-        @Override
-        public int compareTo(Vertex o) {
-            return Double.compare(this.getDistance(), o.getDistance());
-        }
-    }
-
-    // Использовал свой Edge, поскольку оригинальный не позволяет работать с весами, а они необходимы для правильного нахождения пути
-    class VertexEdge {
-        // Координаты вершин источника и цели
-        Vertex start;
-        Vertex end;
-
-        // Сложность пути
-        double weight;
-
-
-        public VertexEdge(double weight, Vertex start, Vertex end) {
-            this.start = start;
-            this.end = end;
-            this.weight = weight;
-        }
-
-        // Далее всякие геттеры и сеттеры
-
-        public Vertex getEnd() {
-            return end;
-        }
-
-        public double getWeight() {
-            return weight;
+        public List<Edge> getPath() {
+            return path;
         }
     }
 }
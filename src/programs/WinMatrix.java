@@ -0,0 +1,82 @@
+package programs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Таблица результатов турнира: сколько раз каждая армия победила каждую и сколько раз они сыграли вничью.
+// Плотные массивы n * n, по одной ячейке на упорядоченную пару армий, вне зависимости от числа сыгранных битв
+public class WinMatrix implements TournamentAggregator {
+    private final int armies;
+    private final int[] wins;
+    private final int[] draws;
+
+    public WinMatrix(int armies) {
+        this.armies = armies;
+        this.wins = new int[armies * armies];
+        this.draws = new int[armies * armies];
+    }
+
+    @Override
+    public void accept(int player, int computer, BattleOutcome outcome) {
+        switch (outcome.getWinner()) {
+            case PLAYER:
+                wins[player * armies + computer]++;
+                break;
+            case COMPUTER:
+                wins[computer * armies + player]++;
+                break;
+            default:
+                draws[player * armies + computer]++;
+                draws[computer * armies + player]++;
+                break;
+        }
+    }
+
+    public int getArmies() {
+        return armies;
+    }
+
+    // Сколько раз армия winner победила армию loser
+    public int getWins(int winner, int loser) {
+        return wins[winner * armies + loser];
+    }
+
+    public int getDraws(int first, int second) {
+        return draws[first * armies + second];
+    }
+
+    public int getGames(int first, int second) {
+        return getWins(first, second) + getWins(second, first) + getDraws(first, second);
+    }
+
+    // Суммарно побед армии над всеми соперниками
+    public int getTotalWins(int army) {
+        int total = 0;
+        for (int other = 0; other < armies; other++) {
+            total += wins[army * armies + other];
+        }
+        return total;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(armies);
+        for (int i = 0; i < wins.length; i++) {
+            out.writeInt(wins[i]);
+            out.writeInt(draws[i]);
+        }
+    }
+
+    @Override
+    public void read(DataInput in) throws IOException {
+        int stored = in.readInt();
+        if (stored != armies) {
+            throw new IOException("В контрольной точке таблица на " + stored + " армий, а в турнире их " + armies);
+        }
+        for (int i = 0; i < wins.length; i++) {
+            wins[i] = in.readInt();
+            draws[i] = in.readInt();
+        }
+    }
+}